@@ -0,0 +1,131 @@
+package pentago_swap;
+
+import java.util.SplittableRandom;
+
+/**
+ * Runs many independent random playouts from one start state in lock-step.
+ *
+ * Every playout starts from the same position and advances one ply per step, so the
+ * turn player, turn number and number of empty cells are shared by the whole batch.
+ * Only the two colour masks differ, and they are kept in primitive arrays. Win lines
+ * are tested line by line across the whole batch, and finished playouts are swapped
+ * out of the active range.
+ * @author Le Nhat Hung
+ */
+public class PentagoBatchRollout {
+    // Indices into the counts returned by run
+    public static final int WHITE_WINS = PentagoBoardState.WHITE;
+    public static final int BLACK_WINS = PentagoBoardState.BLACK;
+    public static final int DRAWS = 2; // Draws, and games that end on the turn limit without a winner
+
+    private static final int NUM_CELLS = PentagoBoardState.BOARD_SIZE * PentagoBoardState.BOARD_SIZE;
+
+    private final long[] whiteBits;
+    private final long[] blackBits;
+    private final boolean[] whiteWin;
+    private final boolean[] blackWin;
+    private final SplittableRandom rng;
+
+    public PentagoBatchRollout(int batchSize, SplittableRandom rng) {
+        this.whiteBits = new long[batchSize];
+        this.blackBits = new long[batchSize];
+        this.whiteWin = new boolean[batchSize];
+        this.blackWin = new boolean[batchSize];
+        this.rng = rng;
+    }
+
+    public int getBatchSize() { return whiteBits.length; }
+
+    /**
+     * Plays numPlayouts uniformly random games from start, batchSize at a time.
+     * @return outcome counts indexed by WHITE_WINS, BLACK_WINS and DRAWS
+     */
+    public int[] run(PentagoBoardState start, int numPlayouts) {
+        int[] counts = new int[3];
+        if (start.gameOver()) {
+            counts[outcomeIndex(start.getWinner())] = numPlayouts;
+            return counts;
+        }
+        for (int done = 0; done < numPlayouts; done += whiteBits.length) {
+            runBatch(start, Math.min(whiteBits.length, numPlayouts - done), counts);
+        }
+        return counts;
+    }
+
+    private void runBatch(PentagoBoardState start, int size, int[] counts) {
+        long startWhite = start.getBits(PentagoBoardState.WHITE);
+        long startBlack = start.getBits(PentagoBoardState.BLACK);
+        for (int i = 0; i < size; i++) {
+            whiteBits[i] = startWhite;
+            blackBits[i] = startBlack;
+        }
+        int turnPlayer = start.getTurnPlayer();
+        int turnNumber = start.getTurnNumber();
+        int numEmpty = NUM_CELLS - Long.bitCount(startWhite | startBlack);
+        int active = size;
+        long[] lines = PentagoBoardState.getWinLines();
+
+        while (active > 0) {
+            // Place and swap in every active playout
+            long[] mover = turnPlayer == PentagoBoardState.WHITE ? whiteBits : blackBits;
+            for (int i = 0; i < active; i++) {
+                long empty = ~(whiteBits[i] | blackBits[i]) & ((1L << NUM_CELLS) - 1);
+                int r = rng.nextInt(numEmpty * PentagoMove.NUM_SWAPS);
+                for (int k = r / PentagoMove.NUM_SWAPS; k > 0; k--) {
+                    empty &= empty - 1;
+                }
+                int swap = r % PentagoMove.NUM_SWAPS;
+                int a = PentagoMove.SWAP_A[swap];
+                int b = PentagoMove.SWAP_B[swap];
+                mover[i] |= Long.lowestOneBit(empty);
+                whiteBits[i] = PentagoBoardState.swapBits(whiteBits[i], a, b);
+                blackBits[i] = PentagoBoardState.swapBits(blackBits[i], a, b);
+                whiteWin[i] = false;
+                blackWin[i] = false;
+            }
+
+            // Test every win line across the batch
+            for (long line : lines) {
+                for (int i = 0; i < active; i++) {
+                    whiteWin[i] |= (whiteBits[i] & line) == line;
+                    blackWin[i] |= (blackBits[i] & line) == line;
+                }
+            }
+
+            // Same end of game rules as PentagoBoardState.updateWinner and gameOver
+            boolean lastPly = turnNumber >= PentagoBoardState.MAX_TURNS - 1 && turnPlayer == PentagoBoardState.BLACK;
+            if (turnPlayer != PentagoBoardState.WHITE) { turnNumber += 1; }
+            turnPlayer = 1 - turnPlayer;
+            numEmpty--;
+            boolean turnLimit = turnNumber >= PentagoBoardState.MAX_TURNS - 1 && turnPlayer == PentagoBoardState.BLACK;
+
+            for (int i = 0; i < active; ) {
+                int outcome;
+                if (whiteWin[i] && blackWin[i]) {
+                    outcome = DRAWS;
+                } else if (whiteWin[i]) {
+                    outcome = WHITE_WINS;
+                } else if (blackWin[i]) {
+                    outcome = BLACK_WINS;
+                } else if (lastPly || turnLimit) {
+                    outcome = DRAWS;
+                } else {
+                    i++;
+                    continue;
+                }
+                counts[outcome]++;
+                active--; // Swap the last active playout into this slot
+                whiteBits[i] = whiteBits[active];
+                blackBits[i] = blackBits[active];
+                whiteWin[i] = whiteWin[active];
+                blackWin[i] = blackWin[active];
+            }
+        }
+    }
+
+    private static int outcomeIndex(int winner) {
+        if (winner == PentagoBoardState.WHITE) { return WHITE_WINS; }
+        if (winner == PentagoBoardState.BLACK) { return BLACK_WINS; }
+        return DRAWS;
+    }
+}
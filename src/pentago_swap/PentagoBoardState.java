@@ -5,9 +5,9 @@ import boardgame.BoardState;
 import boardgame.Move;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.function.UnaryOperator;
+import java.util.Arrays;
 import java.util.Random;
+import java.util.SplittableRandom;
 
 import java.util.Scanner;
 
@@ -40,51 +40,87 @@ public class PentagoBoardState extends BoardState {
         public String toString() { return name(); }
     }
 
-    private static final UnaryOperator<PentagoCoord> getNextHorizontal = c -> new PentagoCoord(c.getX(), c.getY()+1);
-    private static final UnaryOperator<PentagoCoord> getNextVertical = c -> new PentagoCoord(c.getX()+1, c.getY());
-    private static final UnaryOperator<PentagoCoord> getNextDiagRight = c -> new PentagoCoord(c.getX()+1, c.getY()+1);
-    private static final UnaryOperator<PentagoCoord> getNextDiagLeft = c -> new PentagoCoord(c.getX()+1, c.getY()-1);
     private static int FIRST_PLAYER = WHITE;
-    private static HashMap<Quadrant, Integer> quadToInt;
-    private static HashMap<Integer, Quadrant> intToQuad;
-    static {
-        quadToInt = new HashMap<>(4);
-        quadToInt.put(Quadrant.TL, 0);
-        quadToInt.put(Quadrant.TR, 1);
-        quadToInt.put(Quadrant.BL, 2);
-        quadToInt.put(Quadrant.BR, 3);
-        intToQuad = new HashMap<>(4);
-        intToQuad.put(0, Quadrant.TL);
-        intToQuad.put(1, Quadrant.TR);
-        intToQuad.put(2, Quadrant.BL);
-        intToQuad.put(3, Quadrant.BR);
-    }
-
-    private Piece[][] board;
-    private Piece[][][] quadrants;
-    private int turnPlayer;
-    private int turnNumber;
-    private int winner;
-    private Random rand;
+    private static final Quadrant[] QUADRANTS = Quadrant.values();
 
-    PentagoBoardState() {
-        super();
-        this.board = new Piece[BOARD_SIZE][BOARD_SIZE];
-        for (int i = 0; i < BOARD_SIZE; i++) {
-            for (int j = 0; j < BOARD_SIZE; j++) {
-                this.board[i][j] = Piece.EMPTY;
+    // Bitboard layout: cell (x, y) is bit x * BOARD_SIZE + y, one mask per colour.
+    private static final int[] QUAD_OFFSETS = { 0, QUAD_SIZE, QUAD_SIZE * BOARD_SIZE, QUAD_SIZE * BOARD_SIZE + QUAD_SIZE };
+    private static final long BOARD_MASK = (1L << (BOARD_SIZE * BOARD_SIZE)) - 1;
+    private static final long[] QUAD_MASKS = new long[NUM_QUADS];
+    static {
+        long topLeft = 0L;
+        for (int i = 0; i < QUAD_SIZE; i++) {
+            for (int j = 0; j < QUAD_SIZE; j++) {
+                topLeft |= 1L << (i * BOARD_SIZE + j);
             }
         }
-        this.quadrants = new Piece[NUM_QUADS][QUAD_SIZE][QUAD_SIZE];
         for (int i = 0; i < NUM_QUADS; i++) {
-            for (int j = 0; j < QUAD_SIZE; j++) {
-                for (int k = 0; k < QUAD_SIZE; k++) {
-                    this.quadrants[i][j][k] = Piece.EMPTY;
+            QUAD_MASKS[i] = topLeft << QUAD_OFFSETS[i];
+        }
+    }
+
+    // Every five-in-a-row on the board as a cell mask: a colour has won when it covers one of them.
+    private static final int WIN_LENGTH = 5;
+    private static final long[] WIN_LINES = buildWinLines();
+
+    private static final int MAX_PLIES = BOARD_SIZE * BOARD_SIZE;
+
+    /*
+     * Base-3 packing: cell i is digit i of the key (0 empty, 1 white, 2 black), so 3^36
+     * positions fit in 63 bits. Rows are packed six digits at a time through lookup tables.
+     */
+    private static final int ROW_MASK = (1 << BOARD_SIZE) - 1;
+    private static final int ROW_STATES = 729; // 3^BOARD_SIZE
+    private static final long MAX_PACKED_KEY = 150094635296999121L; // 3^36
+    private static final short[] ROW_PACK = new short[1 << (2 * BOARD_SIZE)];
+    private static final byte[] ROW_WHITE = new byte[ROW_STATES];
+    private static final byte[] ROW_BLACK = new byte[ROW_STATES];
+    static {
+        for (int w = 0; w <= ROW_MASK; w++) {
+            for (int b = 0; b <= ROW_MASK; b++) {
+                if ((w & b) != 0) { continue; }
+                int row = 0;
+                for (int j = BOARD_SIZE - 1; j >= 0; j--) {
+                    row = row * 3 + ((w >> j) & 1) + 2 * ((b >> j) & 1);
                 }
+                ROW_PACK[w << BOARD_SIZE | b] = (short) row;
+                ROW_WHITE[row] = (byte) w;
+                ROW_BLACK[row] = (byte) b;
             }
         }
+    }
 
-        rand = new Random(2019);
+    // Zobrist keys per colour and cell; a position's hash is the XOR of the keys of its pieces.
+    private static final long[][] ZOBRIST_KEYS = new long[2][BOARD_SIZE * BOARD_SIZE];
+    static {
+        Random zobristRand = new Random(0x5EED_2019L);
+        for (int i = 0; i < ZOBRIST_KEYS.length; i++) {
+            for (int j = 0; j < ZOBRIST_KEYS[i].length; j++) {
+                ZOBRIST_KEYS[i][j] = zobristRand.nextLong();
+            }
+        }
+    }
+
+    private long whiteBits;
+    private long blackBits;
+    private long hash;
+    private int turnPlayer;
+    private int turnNumber;
+    private int winner;
+    private SplittableRandom rand; // Created on first use by getRandomMove()
+
+    // Make/unmake history, allocated on first use so that clones stay cheap
+    private int[] undoMoves;
+    private int[] undoWinners;
+    private int undoSize;
+
+    PentagoBoardState() {
+        super();
+        this.whiteBits = 0L;
+        this.blackBits = 0L;
+        this.hash = 0L;
+
+        rand = new SplittableRandom(2019);
         winner = Board.NOBODY;
         turnPlayer = FIRST_PLAYER;
         turnNumber = 0;
@@ -93,24 +129,71 @@ public class PentagoBoardState extends BoardState {
     // For cloning
     private PentagoBoardState(PentagoBoardState pbs) {
         super();
-        this.board = new Piece[BOARD_SIZE][BOARD_SIZE];
-        for (int i = 0; i < BOARD_SIZE; i++) {
-            System.arraycopy(pbs.board[i], 0, this.board[i], 0, BOARD_SIZE);
-        }
-        this.quadrants = new Piece[NUM_QUADS][QUAD_SIZE][QUAD_SIZE];
-        for (int i = 0; i < NUM_QUADS; i++) {
-            for (int j = 0; j < QUAD_SIZE; j++) {
-                System.arraycopy(pbs.quadrants[i][j], 0, this.quadrants[i][j], 0, QUAD_SIZE);
-            }
-        }
+        this.whiteBits = pbs.whiteBits;
+        this.blackBits = pbs.blackBits;
+        this.hash = pbs.hash;
 
-        rand = new Random(2019);
         this.winner = pbs.winner;
         this.turnPlayer = pbs.turnPlayer;
         this.turnNumber = pbs.turnNumber;
     }
 
-    Piece[][] getBoard() { return this.board; }
+    /**
+     * Rebuilds a state from a key produced by toPackedKey. The turn player and turn number
+     * follow from the piece counts and the winner from the board, so a winner forced with
+     * setWinner is not restored.
+     * @throws IllegalArgumentException if the key does not describe a reachable piece count
+     */
+    public static PentagoBoardState fromPackedKey(long key) throws IllegalArgumentException {
+        if (key < 0 || key >= MAX_PACKED_KEY) { throw new IllegalArgumentException("Invalid packed key: " + key); }
+        PentagoBoardState pbs = new PentagoBoardState();
+        for (int i = 0; i < BOARD_SIZE; i++) {
+            int row = (int) (key % ROW_STATES);
+            key /= ROW_STATES;
+            pbs.whiteBits |= (long) ROW_WHITE[row] << (i * BOARD_SIZE);
+            pbs.blackBits |= (long) ROW_BLACK[row] << (i * BOARD_SIZE);
+        }
+        pbs.hash = hashOf(pbs.whiteBits, pbs.blackBits);
+
+        int numWhite = Long.bitCount(pbs.whiteBits);
+        int numBlack = Long.bitCount(pbs.blackBits);
+        if (numWhite == numBlack) {
+            pbs.turnPlayer = WHITE;
+        } else if (numWhite == numBlack + 1) {
+            pbs.turnPlayer = BLACK;
+        } else {
+            throw new IllegalArgumentException("Unreachable piece counts in packed key");
+        }
+        pbs.turnNumber = numBlack;
+
+        // Same outcome as updateWinner, which only depends on the board
+        boolean whiteWin = pbs.checkWin(WHITE);
+        boolean blackWin = pbs.checkWin(BLACK);
+        if (whiteWin && blackWin) {
+            pbs.winner = Board.DRAW;
+        } else if (whiteWin) {
+            pbs.winner = WHITE;
+        } else if (blackWin) {
+            pbs.winner = BLACK;
+        } else if (numWhite + numBlack == MAX_PLIES) {
+            pbs.winner = Board.DRAW;
+        }
+        return pbs;
+    }
+
+    /**
+     * Exact, collision-free key of the position: cell i is base-3 digit i (0 empty, 1 white, 2 black).
+     * @see #fromPackedKey(long)
+     */
+    public long toPackedKey() {
+        long key = 0L;
+        for (int i = BOARD_SIZE - 1; i >= 0; i--) {
+            int w = (int) (whiteBits >>> (i * BOARD_SIZE)) & ROW_MASK;
+            int b = (int) (blackBits >>> (i * BOARD_SIZE)) & ROW_MASK;
+            key = key * ROW_STATES + ROW_PACK[w << BOARD_SIZE | b];
+        }
+        return key;
+    }
 
     @Override
     public Object clone() {
@@ -130,7 +213,7 @@ public class PentagoBoardState extends BoardState {
     public int getTurnNumber() { return turnNumber; }
 
     @Override
-    public boolean isInitialized() { return board != null; }
+    public boolean isInitialized() { return true; }
 
     @Override
     public int firstPlayer() { return FIRST_PLAYER; }
@@ -139,37 +222,194 @@ public class PentagoBoardState extends BoardState {
 
     @Override
     public Move getRandomMove() {
-        ArrayList<PentagoMove> moves = getAllLegalMoves();
-        return moves.get(rand.nextInt(moves.size()));
+        if (rand == null) { rand = new SplittableRandom(); }
+        return getRandomMove(rand);
+    }
+
+    /**
+     * Uniformly random legal move drawn from the given generator, for rollouts.
+     * @return the interned move, see PentagoMove.fromCode
+     */
+    public PentagoMove getRandomMove(SplittableRandom rng) {
+        return PentagoMove.fromCode(getRandomMoveCode(rng), turnPlayer);
+    }
+
+    /**
+     * Picks a uniformly random legal move straight from the occupancy masks, without
+     * generating the move list: one draw selects both the empty cell and the swap.
+     * @return a move code, see PentagoMove.getMoveCode
+     */
+    public int getRandomMoveCode(SplittableRandom rng) {
+        long empty = ~(whiteBits | blackBits) & BOARD_MASK;
+        int r = rng.nextInt(Long.bitCount(empty) * PentagoMove.NUM_SWAPS);
+        for (int i = r / PentagoMove.NUM_SWAPS; i > 0; i--) {
+            empty &= empty - 1; // Drop the lowest empty cells until the chosen one is lowest
+        }
+        return Long.numberOfTrailingZeros(empty) * PentagoMove.NUM_SWAPS + r % PentagoMove.NUM_SWAPS;
     }
 
     public Piece getPieceAt(int xPos, int yPos) {
         if (xPos < 0 || xPos >= BOARD_SIZE || yPos < 0 || yPos >= BOARD_SIZE) {
             throw new IllegalArgumentException("Out of range");
         }
-        return board[xPos][yPos];
+        long bit = 1L << (xPos * BOARD_SIZE + yPos);
+        if ((whiteBits & bit) != 0) { return Piece.WHITE; }
+        if ((blackBits & bit) != 0) { return Piece.BLACK; }
+        return Piece.EMPTY;
     }
 
     public Piece getPieceAt(PentagoCoord coord) {
         return getPieceAt(coord.getX(), coord.getY());
     }
 
+    /**
+     * @return the legal moves as interned instances, see PentagoMove.fromCode
+     */
     public ArrayList<PentagoMove> getAllLegalMoves() {
-        ArrayList<PentagoMove> legalMoves = new ArrayList<>();
-        for (int i = 0; i < BOARD_SIZE; i++) { //Iterate through positions on board
-            for (int j = 0; j < BOARD_SIZE; j++) {
-                if (board[i][j] == Piece.EMPTY) {
-                    for (int k = 0; k < NUM_QUADS - 1; k++) { // Iterate through valid swaps
-                        for (int l = k+1; l < NUM_QUADS; l++) {
-                            legalMoves.add(new PentagoMove(i, j, intToQuad.get(k), intToQuad.get(l), turnPlayer));
-                        }
-                    }
-                }
+        long empty = ~(whiteBits | blackBits) & BOARD_MASK;
+        ArrayList<PentagoMove> legalMoves = new ArrayList<>(Long.bitCount(empty) * PentagoMove.NUM_SWAPS);
+        while (empty != 0) { // Empty cells in increasing order, then every swap
+            int code = Long.numberOfTrailingZeros(empty) * PentagoMove.NUM_SWAPS;
+            for (int k = 0; k < PentagoMove.NUM_SWAPS; k++) {
+                legalMoves.add(PentagoMove.fromCode(code + k, turnPlayer));
             }
+            empty &= empty - 1;
         }
         return legalMoves;
     }
 
+    /**
+     * Allocation-free version of getAllLegalMoves, in the same order.
+     * @param moves buffer of at least PentagoMove.NUM_CODES entries, filled with move codes
+     * @return the number of legal moves written to the buffer
+     */
+    public int getLegalMoves(int[] moves) {
+        int numMoves = 0;
+        long empty = ~(whiteBits | blackBits) & BOARD_MASK;
+        while (empty != 0) {
+            int code = Long.numberOfTrailingZeros(empty) * PentagoMove.NUM_SWAPS;
+            for (int k = 0; k < PentagoMove.NUM_SWAPS; k++) {
+                moves[numMoves++] = code + k;
+            }
+            empty &= empty - 1;
+        }
+        return numMoves;
+    }
+
+    /*
+     * Tactical queries. They work on the masks alone: for each of the six swaps the
+     * opponent's pieces land in the same place whatever cell we play, and a cell
+     * completes one of our lines only if it is the last missing cell of that line.
+     */
+
+    /**
+     * @return true if the turn player has a move that wins the game outright
+     */
+    public boolean hasWinningMove() {
+        if (gameOver()) { return false; }
+        for (int swap = 0; swap < PentagoMove.NUM_SWAPS; swap++) {
+            if (!opponentFiveAfterSwap(swap) && completingCells(swap) != 0) { return true; }
+        }
+        return false;
+    }
+
+    /**
+     * Lists the moves that win the game outright for the turn player, grouped by swap.
+     * Moves whose swap also completes an opponent line only draw and are left out.
+     * @param moves buffer of at least PentagoMove.NUM_CODES entries, filled with move codes
+     * @return the number of winning moves written to the buffer
+     */
+    public int getWinningMoves(int[] moves) {
+        if (gameOver()) { return 0; }
+        int numMoves = 0;
+        for (int swap = 0; swap < PentagoMove.NUM_SWAPS; swap++) {
+            if (opponentFiveAfterSwap(swap)) { continue; }
+            for (long cells = completingCells(swap); cells != 0; cells &= cells - 1) {
+                moves[numMoves++] = Long.numberOfTrailingZeros(cells) * PentagoMove.NUM_SWAPS + swap;
+            }
+        }
+        return numMoves;
+    }
+
+    /**
+     * Lists the moves, grouped by swap, after which the opponent has not won: the swap does
+     * not complete an opponent line, or it also completes one of ours for a draw.
+     * @param moves buffer of at least PentagoMove.NUM_CODES entries, filled with move codes
+     * @return the number of safe moves written to the buffer
+     */
+    public int getSafeMoves(int[] moves) {
+        if (gameOver()) { return 0; }
+        int numMoves = 0;
+        long empty = ~(whiteBits | blackBits) & BOARD_MASK;
+        for (int swap = 0; swap < PentagoMove.NUM_SWAPS; swap++) {
+            long cells = opponentFiveAfterSwap(swap) ? completingCells(swap) : empty;
+            for (; cells != 0; cells &= cells - 1) {
+                moves[numMoves++] = Long.numberOfTrailingZeros(cells) * PentagoMove.NUM_SWAPS + swap;
+            }
+        }
+        return numMoves;
+    }
+
+    /**
+     * Cheap evaluation for move ordering: over the lines of five the opponent has no
+     * piece on, sums 4^k where k is the number of the player's pieces on the line
+     */
+    public int getOpenLineScore(int player) {
+        long mine = player == WHITE ? whiteBits : blackBits;
+        long theirs = player == WHITE ? blackBits : whiteBits;
+        int score = 0;
+        for (long line : WIN_LINES) {
+            if ((theirs & line) == 0) {
+                score += 1 << (2 * Long.bitCount(mine & line));
+            }
+        }
+        return score;
+    }
+
+    /**
+     * Cheap pattern weights for rollouts: for every line of five the opponent of player
+     * has no piece on, adds 2^k to each empty cell of the line, where k is the number
+     * of player's pieces on it
+     * @param weights one entry per cell, x * BOARD_SIZE + y, added to
+     */
+    public void addOpenLineWeights(int player, int[] weights) {
+        long mine = player == WHITE ? whiteBits : blackBits;
+        long theirs = player == WHITE ? blackBits : whiteBits;
+        long empty = ~(whiteBits | blackBits) & BOARD_MASK;
+        for (long line : WIN_LINES) {
+            if ((theirs & line) != 0) { continue; }
+            int weight = 1 << Long.bitCount(mine & line);
+            for (long cells = line & empty; cells != 0; cells &= cells - 1) {
+                weights[Long.numberOfTrailingZeros(cells)] += weight;
+            }
+        }
+    }
+
+    private boolean opponentFiveAfterSwap(int swap) {
+        long opponent = turnPlayer == WHITE ? blackBits : whiteBits;
+        return hasFiveInARow(swapBits(opponent, PentagoMove.SWAP_A[swap], PentagoMove.SWAP_B[swap]));
+    }
+
+    /**
+     * Empty cells where the turn player can place and then play the given swap to have five in a row
+     */
+    private long completingCells(int swap) {
+        int a = PentagoMove.SWAP_A[swap];
+        int b = PentagoMove.SWAP_B[swap];
+        long mine = swapBits(turnPlayer == WHITE ? whiteBits : blackBits, a, b);
+        long empty = swapBits(~(whiteBits | blackBits) & BOARD_MASK, a, b);
+        long cells = 0L;
+        for (long line : WIN_LINES) {
+            long missing = line & ~mine;
+            if (missing == 0) { // The swap alone completes a line, so any placement wins
+                cells |= empty;
+            } else if ((missing & (missing - 1)) == 0) {
+                cells |= missing & empty;
+            }
+        }
+        return swapBits(cells, a, b); // A swap is its own inverse: back to placement cells
+    }
+
     /**
      * Check if the given move is legal
      * @param m the move
@@ -181,15 +421,16 @@ public class PentagoBoardState extends BoardState {
         if (c.getX() >= BOARD_SIZE || c.getX() < 0 || c.getY() < 0 || c.getY() >= BOARD_SIZE) { return false; }
         if (turnPlayer != m.getPlayerID() || m.getPlayerID() == ILLEGAL) { return false; } //Check right player
         
-        if (board[c.getX()][c.getY()] != Piece.EMPTY) {
+        Piece p = getPieceAt(c);
+        if (p != Piece.EMPTY) {
         	Utils.print("illegal move");
-        	if (board[c.getX()][c.getY()] == Piece.WHITE)
+        	if (p == Piece.WHITE)
         		Utils.print("piece white");
-        	else if (board[c.getX()][c.getY()] == Piece.BLACK)
+        	else if (p == Piece.BLACK)
         		Utils.print("piece black");
         }
         	
-        return board[c.getX()][c.getY()] == Piece.EMPTY;
+        return p == Piece.EMPTY;
     }
 
     /**
@@ -199,7 +440,7 @@ public class PentagoBoardState extends BoardState {
      */
     public boolean isPlaceLegal(PentagoCoord c) {
         if (c.getX() >= BOARD_SIZE || c.getX() < 0 || c.getY() < 0 || c.getY() >= BOARD_SIZE) { return false; }
-        return board[c.getX()][c.getY()] == Piece.EMPTY;
+        return getPieceAt(c) == Piece.EMPTY;
     }
 
     public void processMove(PentagoMove m) throws IllegalArgumentException {
@@ -211,55 +452,134 @@ public class PentagoBoardState extends BoardState {
     }
 
     /**
-     * Updates the appropriate quandrant based on the location of the move m
+     * Fast path for search code: plays the move with the given code without any legality
+     * checks, and records it so that undoMove can take it back. The code must be a legal
+     * move for the turn player, e.g. one returned by getLegalMoves.
+     * @param code move code, see PentagoMove.getMoveCode
+     */
+    public void applyMove(int code) {
+        if (undoMoves == null) {
+            undoMoves = new int[MAX_PLIES];
+            undoWinners = new int[MAX_PLIES];
+        }
+        undoMoves[undoSize] = code;
+        undoWinners[undoSize] = winner;
+        undoSize++;
+
+        int swap = code % PentagoMove.NUM_SWAPS;
+        togglePiece(turnPlayer, code / PentagoMove.NUM_SWAPS);
+        swapQuadrants(PentagoMove.SWAP_A[swap], PentagoMove.SWAP_B[swap]);
+        updateWinner();
+        if (turnPlayer != FIRST_PLAYER) { turnNumber += 1; }
+        turnPlayer = 1 - turnPlayer;
+    }
+
+    /**
+     * Takes back the last move played with applyMove. Moves played with processMove are not recorded.
+     */
+    public void undoMove() {
+        if (undoSize == 0) { throw new IllegalStateException("No move to undo"); }
+        undoSize--;
+        int code = undoMoves[undoSize];
+        int swap = code % PentagoMove.NUM_SWAPS;
+
+        turnPlayer = 1 - turnPlayer;
+        if (turnPlayer != FIRST_PLAYER) { turnNumber -= 1; }
+        swapQuadrants(PentagoMove.SWAP_A[swap], PentagoMove.SWAP_B[swap]); // A swap is its own inverse
+        togglePiece(turnPlayer, code / PentagoMove.NUM_SWAPS);
+        winner = undoWinners[undoSize];
+    }
+
+    /**
+     * @return the number of moves that undoMove can take back
+     */
+    public int getUndoDepth() { return undoSize; }
+
+    /**
+     * Places the turn player's piece and swaps the two quadrants of the move m
      * @param m: Pentago move
      */
     private void updateQuadrants(PentagoMove m) {
-        Piece turnPiece = turnPlayer == WHITE ? Piece.WHITE : Piece.BLACK;
-        int x = m.getMoveCoord().getX();
-        int y = m.getMoveCoord().getY();
-        boolean isLeftQuadMove = y / 3 == 0;
-        boolean isTopQuadMove = x / 3 == 0;
-        if (isLeftQuadMove && isTopQuadMove) { //Top left quadrant
-            quadrants[0][x][y] = turnPiece;
-        } else if (!isLeftQuadMove && isTopQuadMove) { //Top right quadrant
-            quadrants[1][x][y % QUAD_SIZE] = turnPiece;
-        } else if (isLeftQuadMove) { //Bottom left quadrant
-            quadrants[2][x % QUAD_SIZE][y] = turnPiece;
-        } else { //Bottom right quadrant
-            quadrants[3][x % QUAD_SIZE][y % QUAD_SIZE] = turnPiece;
+        PentagoCoord c = m.getMoveCoord();
+        togglePiece(turnPlayer, c.getX() * BOARD_SIZE + c.getY());
+        swapQuadrants(m.getASwap().ordinal(), m.getBSwap().ordinal());
+    }
+
+    /**
+     * Adds or removes the player's piece on the given cell
+     */
+    private void togglePiece(int player, int cell) {
+        if (player == WHITE) {
+            whiteBits ^= 1L << cell;
+        } else {
+            blackBits ^= 1L << cell;
         }
+        hash ^= ZOBRIST_KEYS[player][cell];
+    }
 
-        //Swapping mechanism
-        int a = quadToInt.get(m.getASwap());
-        int b = quadToInt.get(m.getBSwap());
-        Piece[][] tmp = quadrants[a];
-        quadrants[a] = quadrants[b];
-        quadrants[b] = tmp;
+    /**
+     * Swaps quadrants a and b of both colours, rehashing only the pieces that move
+     */
+    private void swapQuadrants(int a, int b) {
+        long swapped = QUAD_MASKS[a] | QUAD_MASKS[b];
+        hash ^= hashOf(WHITE, whiteBits & swapped) ^ hashOf(BLACK, blackBits & swapped);
+        whiteBits = swapBits(whiteBits, a, b);
+        blackBits = swapBits(blackBits, a, b);
+        hash ^= hashOf(WHITE, whiteBits & swapped) ^ hashOf(BLACK, blackBits & swapped);
+    }
 
-        buildBoardFromQuadrants();
+    /**
+     * XOR of the Zobrist keys of the given player's pieces in bits
+     */
+    private static long hashOf(int player, long bits) {
+        long h = 0L;
+        while (bits != 0) {
+            h ^= ZOBRIST_KEYS[player][Long.numberOfTrailingZeros(bits)];
+            bits &= bits - 1;
+        }
+        return h;
     }
 
     /**
-     * Updates the board after the quadrants have changed.
+     * Swaps the contents of quadrants a and b in a single colour mask.
+     * Every quadrant has the same shape, so this is a mask and a shift by the offset between them.
      */
-    private void buildBoardFromQuadrants() {
-        for (int i = 0; i < BOARD_SIZE; i++) {
-            int quadrantRow = i < 3 ? i : i - 3;
-            int leftQuad = i < 3 ? 0 : 2;
-            int rightQuad = i < 3 ? 1 : 3;
-            System.arraycopy(quadrants[leftQuad][quadrantRow], 0, board[i], 0, 3);
-            System.arraycopy(quadrants[rightQuad][quadrantRow], 0, board[i], 3, 3);
+    static long swapBits(long bits, int a, int b) {
+        if (a > b) { int tmp = a; a = b; b = tmp; }
+        int shift = QUAD_OFFSETS[b] - QUAD_OFFSETS[a];
+        return (bits & ~(QUAD_MASKS[a] | QUAD_MASKS[b]))
+                | ((bits & QUAD_MASKS[a]) << shift)
+                | ((bits & QUAD_MASKS[b]) >>> shift);
+    }
+
+    private static long[] buildWinLines() {
+        int[][] directions = { {0, 1}, {1, 0}, {1, 1}, {1, -1} }; // Horizontal, vertical, diagonal right, diagonal left
+        long[] lines = new long[directions.length * BOARD_SIZE * BOARD_SIZE];
+        int numLines = 0;
+        for (int[] d : directions) {
+            for (int i = 0; i < BOARD_SIZE; i++) {
+                for (int j = 0; j < BOARD_SIZE; j++) {
+                    int endX = i + (WIN_LENGTH - 1) * d[0];
+                    int endY = j + (WIN_LENGTH - 1) * d[1];
+                    if (endX < 0 || endX >= BOARD_SIZE || endY < 0 || endY >= BOARD_SIZE) { continue; }
+                    long line = 0L;
+                    for (int k = 0; k < WIN_LENGTH; k++) {
+                        line |= 1L << ((i + k * d[0]) * BOARD_SIZE + j + k * d[1]);
+                    }
+                    lines[numLines++] = line;
+                }
+            }
         }
+        return Arrays.copyOf(lines, numLines);
     }
 
     /**
      * Checks if the game has ended, and changes the winner attribute if so.
      */
     private void updateWinner() {
-        boolean playerWin = checkVerticalWin(turnPlayer) || checkHorizontalWin(turnPlayer) || checkDiagRightWin(turnPlayer) || checkDiagLeftWin(turnPlayer);
+        boolean playerWin = checkWin(turnPlayer);
         int otherPlayer = 1 - turnPlayer;
-        boolean otherWin = checkVerticalWin(otherPlayer) || checkHorizontalWin(otherPlayer) || checkDiagRightWin(otherPlayer) || checkDiagLeftWin(otherPlayer);
+        boolean otherWin = checkWin(otherPlayer);
         if (playerWin) { // Current player has won
             winner = otherWin ? Board.DRAW : turnPlayer;
         } else if (otherWin) { // Player's move caused the opponent to win
@@ -274,50 +594,49 @@ public class PentagoBoardState extends BoardState {
         return ((turnNumber >= MAX_TURNS - 1) && turnPlayer == BLACK) || winner != Board.NOBODY;
     }
 
-    private boolean checkVerticalWin(int player) {
-        return checkWinRange(player, 0, 2, 0, BOARD_SIZE, getNextVertical);
+    private boolean checkWin(int player) {
+        return hasFiveInARow(player == WHITE ? whiteBits : blackBits);
     }
 
-    private boolean checkHorizontalWin(int player) {
-        return checkWinRange(player, 0, BOARD_SIZE, 0, 2, getNextHorizontal);
+    static boolean hasFiveInARow(long bits) {
+        for (long line : WIN_LINES) {
+            if ((bits & line) == line) { return true; }
+        }
+        return false;
     }
 
-    private boolean checkDiagRightWin(int player) {
-        return checkWinRange(player, 0, 2, 0, 2, getNextDiagRight);
-    }
+    static long[] getWinLines() { return WIN_LINES; }
+
+    /**
+     * @return the mask of the given player's pieces, bit x * BOARD_SIZE + y for cell (x, y)
+     */
+    public long getBits(int player) { return player == WHITE ? whiteBits : blackBits; }
 
-    private boolean checkDiagLeftWin(int player) {
-        return checkWinRange(player, 0 ,2, BOARD_SIZE - 2, BOARD_SIZE, getNextDiagLeft);
+    /**
+     * Zobrist hash of an arbitrary position, consistent with getHash()
+     */
+    public static long hashOf(long whiteBits, long blackBits) {
+        return hashOf(WHITE, whiteBits) ^ hashOf(BLACK, blackBits);
     }
 
-    private boolean checkWinRange(int player, int xStart, int xEnd, int yStart, int yEnd, UnaryOperator<PentagoCoord> direction) {
-        boolean win = false;
-        for (int i = xStart; i < xEnd; i++) {
-            for (int j = yStart; j < yEnd; j++) {
-                win |= checkWin(player, new PentagoCoord(i, j), direction);
-                if (win) { return true; }
-            }
-        }
-        return false;
+    /**
+     * 64-bit Zobrist hash of the pieces on the board, maintained incrementally by processMove.
+     * Equal positions always have equal hashes.
+     */
+    public long getHash() { return hash; }
+
+    @Override
+    public int hashCode() {
+        return (int) (hash ^ (hash >>> 32));
     }
 
-    private boolean checkWin(int player, PentagoCoord start, UnaryOperator<PentagoCoord> direction) {
-        int winCounter = 0;
-        Piece currColour = player == 0 ? Piece.WHITE : Piece.BLACK;
-        PentagoCoord current = start;
-        while(true) {
-            try {
-                if (currColour == this.board[current.getX()][current.getY()]) {
-                    winCounter++;
-                    current = direction.apply(current);
-                } else {
-                    break;
-                }
-            } catch (IllegalArgumentException e) { //We have run off the board
-                break;
-            }
-        }
-        return winCounter >= 5;
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) { return true; }
+        if (!(o instanceof PentagoBoardState)) { return false; }
+        PentagoBoardState pbs = (PentagoBoardState) o;
+        return hash == pbs.hash && whiteBits == pbs.whiteBits && blackBits == pbs.blackBits
+                && turnPlayer == pbs.turnPlayer && turnNumber == pbs.turnNumber && winner == pbs.winner;
     }
 
     public void printBoard() {
@@ -333,7 +652,7 @@ public class PentagoBoardState extends BoardState {
             boardString.append("|");
             for (int j = 0; j < BOARD_SIZE; j++) {
                 boardString.append(" ");
-                boardString.append(board[i][j].toString());
+                boardString.append(getPieceAt(i, j).toString());
                 boardString.append(" |");
                 if (j == QUAD_SIZE - 1) {
                     boardString.append("|");
@@ -5,6 +5,16 @@ package pentago_swap;
  * @author mgrenander
  */
 public class PentagoCoord {
+    // Interned coordinates, indexed by x * BOARD_SIZE + y
+    private static final PentagoCoord[] COORDS = new PentagoCoord[PentagoBoardState.BOARD_SIZE * PentagoBoardState.BOARD_SIZE];
+    static {
+        for (int i = 0; i < PentagoBoardState.BOARD_SIZE; i++) {
+            for (int j = 0; j < PentagoBoardState.BOARD_SIZE; j++) {
+                COORDS[i * PentagoBoardState.BOARD_SIZE + j] = new PentagoCoord(i, j);
+            }
+        }
+    }
+
     private int x;
     private int y;
 
@@ -17,6 +27,17 @@ public class PentagoCoord {
         this.y = y;
     }
 
+    /**
+     * Returns the shared instance for (x, y). Coordinates are immutable, so callers
+     * on hot paths should prefer this to the constructor.
+     */
+    public static PentagoCoord valueOf(int x, int y) throws IllegalArgumentException {
+        if (!isValidCoord(x, y)) {
+            throw new IllegalArgumentException("Invalid Coordinates: (" + x + ", " + y + ")");
+        }
+        return COORDS[x * PentagoBoardState.BOARD_SIZE + y];
+    }
+
     public int getX() { return this.x; }
     public int getY() { return this.y; }
 
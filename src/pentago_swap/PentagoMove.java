@@ -3,33 +3,73 @@ package pentago_swap;
 import boardgame.Move;
 import pentago_swap.PentagoBoardState.Quadrant;
 
+import java.util.Arrays;
+
 
 /**
  * @author mgrenander
  */
 public class PentagoMove extends Move {
+    /*
+     * Primitive move encoding: cell * NUM_SWAPS + swap, where cell = x * BOARD_SIZE + y
+     * and swap indexes the quadrant pairs in the order getAllLegalMoves produces them.
+     */
+    public static final int NUM_SWAPS = 6;
+    public static final int NUM_CODES = PentagoBoardState.BOARD_SIZE * PentagoBoardState.BOARD_SIZE * NUM_SWAPS;
+    static final int[] SWAP_A = { 0, 0, 0, 1, 1, 2 };
+    static final int[] SWAP_B = { 1, 2, 3, 2, 3, 3 };
+    private static final int[][] SWAP_INDEX = new int[4][4];
+    private static final Quadrant[] QUADRANTS = Quadrant.values();
+
+    // Interned moves per player, indexed by move code
+    private static final PentagoMove[][] MOVES = new PentagoMove[2][NUM_CODES];
+    static {
+        for (int[] row : SWAP_INDEX) {
+            Arrays.fill(row, -1);
+        }
+        for (int i = 0; i < NUM_SWAPS; i++) {
+            SWAP_INDEX[SWAP_A[i]][SWAP_B[i]] = i;
+            SWAP_INDEX[SWAP_B[i]][SWAP_A[i]] = i;
+        }
+        for (int p = 0; p < MOVES.length; p++) {
+            for (int code = 0; code < NUM_CODES; code++) {
+                int cell = code / NUM_SWAPS;
+                int swap = code % NUM_SWAPS;
+                MOVES[p][code] = new PentagoMove(cell / PentagoBoardState.BOARD_SIZE, cell % PentagoBoardState.BOARD_SIZE,
+                        QUADRANTS[SWAP_A[swap]], QUADRANTS[SWAP_B[swap]], p, true);
+            }
+        }
+    }
+
     private int playerId;
     private int xMove;
     private int yMove;
     private Quadrant aSwap;
     private Quadrant bSwap;
     private boolean fromBoard;
+    private final boolean interned; // Shared instance from fromCode, whose fields never change
 
     public PentagoMove(PentagoCoord coord, Quadrant aSwap, Quadrant bSwap, int playerId) {
         this(coord.getX(), coord.getY(), aSwap, bSwap, playerId);
     }
 
     public PentagoMove(int x, int y, Quadrant aSwap, Quadrant bSwap, int playerId) {
+        this(x, y, aSwap, bSwap, playerId, false);
+    }
+
+    private PentagoMove(int x, int y, Quadrant aSwap, Quadrant bSwap, int playerId, boolean interned) {
         this.playerId = playerId;
         this.xMove = x;
         this.yMove = y;
         this.aSwap = aSwap;
         this.bSwap = bSwap;
         this.fromBoard = false;
+        this.interned = interned;
     }
 
     public PentagoMove(String formatString) {
         String[] components = formatString.split(" ");
+        this.interned = false;
         try {
             this.xMove = Integer.parseInt(components[0]);
             this.yMove = Integer.parseInt(components[1]);
@@ -42,8 +82,28 @@ public class PentagoMove extends Move {
         }
     }
 
+    /**
+     * Returns the shared move for the given code and player. These instances are
+     * interned: setPlayerID and setFromBoard accept only the values they already
+     * hold, which is what the client and server set on a move they receive.
+     */
+    public static PentagoMove fromCode(int code, int playerId) {
+        return MOVES[playerId][code];
+    }
+
+    /**
+     * @return the primitive code of this move, or -1 if it is off the board or swaps a quadrant with itself
+     */
+    public int getMoveCode() {
+        int size = PentagoBoardState.BOARD_SIZE;
+        if (xMove < 0 || xMove >= size || yMove < 0 || yMove >= size) { return -1; }
+        int swap = SWAP_INDEX[aSwap.ordinal()][bSwap.ordinal()];
+        if (swap < 0) { return -1; }
+        return (xMove * size + yMove) * NUM_SWAPS + swap;
+    }
+
     // Getters
-    public PentagoCoord getMoveCoord() { return new PentagoCoord(this.xMove, this.yMove); }
+    public PentagoCoord getMoveCoord() { return PentagoCoord.valueOf(this.xMove, this.yMove); }
     public Quadrant getASwap() { return this.aSwap; }
     public Quadrant getBSwap() { return this.bSwap; }
 
@@ -65,10 +125,20 @@ public class PentagoMove extends Move {
     public int getPlayerID() { return this.playerId; }
 
     @Override
-    public void setPlayerID(int playerId) { this.playerId = playerId; }
+    public void setPlayerID(int playerId) {
+        if (interned && playerId != this.playerId) {
+            throw new UnsupportedOperationException("Interned moves are shared, copy the move to change its player.");
+        }
+        this.playerId = playerId;
+    }
 
     @Override
-    public void setFromBoard(boolean fromBoard) { this.fromBoard = fromBoard; }
+    public void setFromBoard(boolean fromBoard) {
+        if (interned && fromBoard != this.fromBoard) {
+            throw new UnsupportedOperationException("Interned moves are shared, copy the move to change its origin.");
+        }
+        this.fromBoard = fromBoard;
+    }
 
     @Override
     public boolean doLog() { return true; }
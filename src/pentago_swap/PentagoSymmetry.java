@@ -0,0 +1,131 @@
+package pentago_swap;
+
+/**
+ * The eight rotations and reflections of the board. Each one maps quadrants onto
+ * quadrants, so it maps every quadrant swap onto another legal swap and every
+ * five-in-a-row onto another one: positions related by a transform are equivalent.
+ *
+ * If t = canonicalTransform(s), then a move stored for the canonical position
+ * is played in s as transformMove(inverse(t), move).
+ * @author Le Nhat Hung
+ */
+public class PentagoSymmetry {
+    public static final int NUM_TRANSFORMS = 8;
+    public static final int IDENTITY = 0;
+
+    private static final int SIZE = PentagoBoardState.BOARD_SIZE;
+    private static final int NUM_CELLS = SIZE * SIZE;
+
+    private static final int[][] CELL_MAP = new int[NUM_TRANSFORMS][NUM_CELLS];
+    private static final int[][] SWAP_MAP = new int[NUM_TRANSFORMS][PentagoMove.NUM_SWAPS];
+    private static final int[] INVERSE = new int[NUM_TRANSFORMS];
+    static {
+        int n = SIZE - 1;
+        for (int x = 0; x < SIZE; x++) {
+            for (int y = 0; y < SIZE; y++) {
+                int[][] images = {
+                    { x, y },         // Identity
+                    { y, n - x },     // Rotate 90
+                    { n - x, n - y }, // Rotate 180
+                    { n - y, x },     // Rotate 270
+                    { x, n - y },     // Mirror columns
+                    { n - x, y },     // Mirror rows
+                    { y, x },         // Transpose
+                    { n - y, n - x }  // Anti-transpose
+                };
+                for (int t = 0; t < NUM_TRANSFORMS; t++) {
+                    CELL_MAP[t][x * SIZE + y] = images[t][0] * SIZE + images[t][1];
+                }
+            }
+        }
+        for (int t = 0; t < NUM_TRANSFORMS; t++) {
+            for (int u = 0; u < NUM_TRANSFORMS; u++) {
+                if (CELL_MAP[u][CELL_MAP[t][1]] == 1 && CELL_MAP[u][CELL_MAP[t][SIZE]] == SIZE) {
+                    INVERSE[t] = u;
+                }
+            }
+            for (int k = 0; k < PentagoMove.NUM_SWAPS; k++) {
+                int a = transformQuad(t, PentagoMove.SWAP_A[k]);
+                int b = transformQuad(t, PentagoMove.SWAP_B[k]);
+                for (int l = 0; l < PentagoMove.NUM_SWAPS; l++) {
+                    if ((PentagoMove.SWAP_A[l] == a && PentagoMove.SWAP_B[l] == b) || (PentagoMove.SWAP_A[l] == b && PentagoMove.SWAP_B[l] == a)) {
+                        SWAP_MAP[t][k] = l;
+                    }
+                }
+            }
+        }
+    }
+
+    private PentagoSymmetry() {}
+
+    // Quadrant index (TL, TR, BL, BR) of the image of the given quadrant's centre cell
+    private static int transformQuad(int t, int quad) {
+        int centre = (quad / 2 * 3 + 1) * SIZE + quad % 2 * 3 + 1;
+        int image = CELL_MAP[t][centre];
+        return image / SIZE / 3 * 2 + image % SIZE / 3;
+    }
+
+    public static int inverse(int t) { return INVERSE[t]; }
+
+    public static int transformCell(int t, int cell) { return CELL_MAP[t][cell]; }
+
+    /**
+     * @return the image of a move code under transform t
+     */
+    public static int transformMove(int t, int code) {
+        int cell = code / PentagoMove.NUM_SWAPS;
+        int swap = code % PentagoMove.NUM_SWAPS;
+        return CELL_MAP[t][cell] * PentagoMove.NUM_SWAPS + SWAP_MAP[t][swap];
+    }
+
+    /**
+     * @return the image of a colour mask under transform t
+     */
+    public static long transformBits(int t, long bits) {
+        if (t == IDENTITY) { return bits; }
+        long image = 0L;
+        while (bits != 0) {
+            image |= 1L << CELL_MAP[t][Long.numberOfTrailingZeros(bits)];
+            bits &= bits - 1;
+        }
+        return image;
+    }
+
+    /**
+     * Picks the transform giving the smallest (white, black) mask pair, so that all
+     * equivalent positions agree on one canonical form.
+     */
+    public static int canonicalTransform(PentagoBoardState s) {
+        long white = s.getBits(PentagoBoardState.WHITE);
+        long black = s.getBits(PentagoBoardState.BLACK);
+        int best = IDENTITY;
+        long bestWhite = white;
+        long bestBlack = black;
+        for (int t = 1; t < NUM_TRANSFORMS; t++) {
+            long w = transformBits(t, white);
+            if (w > bestWhite) { continue; }
+            long b = transformBits(t, black);
+            if (w < bestWhite || b < bestBlack) {
+                best = t;
+                bestWhite = w;
+                bestBlack = b;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return the Zobrist hash of the canonical form of s, equal for all equivalent positions
+     */
+    public static long canonicalKey(PentagoBoardState s) {
+        return key(s, canonicalTransform(s));
+    }
+
+    /**
+     * @return the Zobrist hash of the image of s under transform t
+     */
+    public static long key(PentagoBoardState s, int t) {
+        return PentagoBoardState.hashOf(transformBits(t, s.getBits(PentagoBoardState.WHITE)),
+                transformBits(t, s.getBits(PentagoBoardState.BLACK)));
+    }
+}
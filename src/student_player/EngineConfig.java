@@ -0,0 +1,150 @@
+// File name: EngineConfig
+
+package student_player;
+
+/**
+ * Settings of one UCT engine instance
+ *
+ * Immutable, so one config can be shared by any number of engines and threads.
+ * Optional settings are changed with the with* methods, which return a copy.
+ *
+ * @author Le Nhat Hung
+ *
+ */
+public final class EngineConfig {
+
+	public static final double DEFAULT_C_PARAM = 1.4;
+
+	// Visits at which a child's own value and its AMAF value weigh the same
+	public static final int DEFAULT_RAVE_EQUIVALENCE = 300;
+
+	// Progressive widening: a node with n visits may have ceil(k (n + 1)^alpha) children
+	public static final double
+		DEFAULT_WIDENING_K = 2.,
+		DEFAULT_WIDENING_ALPHA = .5;
+
+	private final int playerTurn; // Colour the engine plays, and rewards are counted for
+	private final int numSims; // Maximum number of simulations per move, 0 for no maximum
+	private final double cParam; // UCT exploration constant
+	private final int raveEquivalence; // 0 disables RAVE
+	private final double wideningK;
+	private final double wideningAlpha;
+	private final int numRollouts; // Playouts per leaf
+	private final boolean parallelRollouts;
+	private final boolean statelessNodes;
+	private final int numThreads; // Root-parallel trees, or workers on one tree in TreeParallelUCT
+	private final int nodeBudget; // Maximum number of tree nodes, 0 to derive it from the heap
+	private final RolloutPolicy rolloutPolicy;
+
+	public EngineConfig (int playerTurn, int numSims) {
+		this(playerTurn, numSims, DEFAULT_C_PARAM, DEFAULT_RAVE_EQUIVALENCE, DEFAULT_WIDENING_K, DEFAULT_WIDENING_ALPHA,
+				1, false, false, 1, 0, RandomRolloutPolicy.INSTANCE);
+	}
+
+	private EngineConfig (int playerTurn, int numSims, double cParam, int raveEquivalence,
+			double wideningK, double wideningAlpha, int numRollouts, boolean parallelRollouts,
+			boolean statelessNodes, int numThreads, int nodeBudget, RolloutPolicy rolloutPolicy) {
+		this.playerTurn = playerTurn;
+		this.numSims = numSims;
+		this.cParam = cParam;
+		this.raveEquivalence = raveEquivalence;
+		this.wideningK = wideningK;
+		this.wideningAlpha = wideningAlpha;
+		this.numRollouts = numRollouts;
+		this.parallelRollouts = parallelRollouts;
+		this.statelessNodes = statelessNodes;
+		this.numThreads = numThreads;
+		this.nodeBudget = nodeBudget;
+		this.rolloutPolicy = rolloutPolicy;
+	}
+
+	public EngineConfig withCParam (double cParam) {
+		return new EngineConfig(playerTurn, numSims, cParam, raveEquivalence, wideningK, wideningAlpha, numRollouts, parallelRollouts, statelessNodes, numThreads, nodeBudget, rolloutPolicy);
+	}
+
+	/**
+	 * @param raveEquivalence visits at which a child's own value and its AMAF value
+	 * weigh the same, 0 to disable RAVE
+	 */
+	public EngineConfig withRave (int raveEquivalence) {
+		return new EngineConfig(playerTurn, numSims, cParam, raveEquivalence, wideningK, wideningAlpha, numRollouts, parallelRollouts, statelessNodes, numThreads, nodeBudget, rolloutPolicy);
+	}
+
+	/**
+	 * Progressive widening lets a node with n visits have ceil(k (n + 1)^alpha) children
+	 */
+	public EngineConfig withWidening (double wideningK, double wideningAlpha) {
+		return new EngineConfig(playerTurn, numSims, cParam, raveEquivalence, wideningK, wideningAlpha, numRollouts, parallelRollouts, statelessNodes, numThreads, nodeBudget, rolloutPolicy);
+	}
+
+	/**
+	 * @param numRollouts number of playouts run per leaf
+	 * @param parallelRollouts run them concurrently on a ForkJoinPool instead of in lock-step
+	 */
+	public EngineConfig withRollouts (int numRollouts, boolean parallelRollouts) {
+		return new EngineConfig(playerTurn, numSims, cParam, raveEquivalence, wideningK, wideningAlpha, numRollouts, parallelRollouts, statelessNodes, numThreads, nodeBudget, rolloutPolicy);
+	}
+
+	/**
+	 * @param statelessNodes if true, only the root stores a state and every other
+	 * node's state is rebuilt by replaying moves from the root onto a scratch state
+	 */
+	public EngineConfig withStatelessNodes (boolean statelessNodes) {
+		return new EngineConfig(playerTurn, numSims, cParam, raveEquivalence, wideningK, wideningAlpha, numRollouts, parallelRollouts, statelessNodes, numThreads, nodeBudget, rolloutPolicy);
+	}
+
+	/**
+	 * @param numThreads number of independent trees grown in parallel from the root
+	 */
+	public EngineConfig withThreads (int numThreads) {
+		return new EngineConfig(playerTurn, numSims, cParam, raveEquivalence, wideningK, wideningAlpha, numRollouts, parallelRollouts, statelessNodes, numThreads, nodeBudget, rolloutPolicy);
+	}
+
+	/**
+	 * @param nodeBudget maximum number of tree nodes, 0 to derive it from the heap
+	 */
+	public EngineConfig withNodeBudget (int nodeBudget) {
+		return new EngineConfig(playerTurn, numSims, cParam, raveEquivalence, wideningK, wideningAlpha, numRollouts, parallelRollouts, statelessNodes, numThreads, nodeBudget, rolloutPolicy);
+	}
+
+	/**
+	 * @param rolloutPolicy move choice in playouts, shared by every engine built from this config
+	 */
+	public EngineConfig withRolloutPolicy (RolloutPolicy rolloutPolicy) {
+		return new EngineConfig(playerTurn, numSims, cParam, raveEquivalence, wideningK, wideningAlpha, numRollouts, parallelRollouts, statelessNodes, numThreads, nodeBudget, rolloutPolicy);
+	}
+
+	/**
+	 * @return the node budget, or the number of nodes of bytesPerNode bytes that fit
+	 * 		in TreeBudget.HEAP_FRACTION of the maximum heap if none was set
+	 */
+	public int getNodeBudget (int bytesPerNode) {
+		if (nodeBudget > 0)
+			return nodeBudget;
+
+		long bytes = (long) (Runtime.getRuntime().maxMemory() * TreeBudget.HEAP_FRACTION);
+		return (int) Math.min(Integer.MAX_VALUE, bytes / bytesPerNode);
+	}
+
+	public int getPlayerTurn () { return playerTurn; }
+
+	public int getNumSims () { return numSims; }
+
+	public double getCParam () { return cParam; }
+
+	public int getRaveEquivalence () { return raveEquivalence; }
+
+	public double getWideningK () { return wideningK; }
+
+	public double getWideningAlpha () { return wideningAlpha; }
+
+	public int getNumRollouts () { return numRollouts; }
+
+	public boolean isParallelRollouts () { return parallelRollouts; }
+
+	public boolean isStatelessNodes () { return statelessNodes; }
+
+	public int getNumThreads () { return numThreads; }
+
+	public RolloutPolicy getRolloutPolicy () { return rolloutPolicy; }
+}
@@ -0,0 +1,220 @@
+// File name: NodePool
+
+package student_player;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import pentago_swap.PentagoMove;
+
+/**
+ * Preallocated MCTS tree stored as parallel primitive arrays.
+ *
+ * A node is an int index. Nodes hold no board state: the state of a node is
+ * rebuilt by replaying the move codes on the path from the root. The children of
+ * a node sit in one contiguous block, reserved for all of its legal moves the
+ * first time it is expanded, and a 216-bit mask records which moves are untried.
+ * A subtree can be kept for the next move by compacting it to the front of the
+ * arrays in place.
+ *
+ * @author Le Nhat Hung
+ *
+ */
+public class NodePool {
+
+	public static final int NONE = -1;
+
+	private static final int KEEP = -2; // Marks a slot of the kept subtree before it is renumbered
+
+	private static final int UNTRIED_WORDS = (PentagoMove.NUM_CODES + 63) / 64;
+
+	// Approximate heap cost of one node across all arrays
+	public static final int BYTES_PER_NODE = 4 + 4 + 2 + 2 + 4 + 8 + 8 * UNTRIED_WORDS + 4;
+
+	private final int[] parent;
+	private final int[] firstChild; // NONE until the node is first expanded
+	private final short[] childCount; // Children expanded so far
+	private final short[] moveCode; // Move that led to the node
+	private final int[] visits;
+	private final double[] valueSum; // From the point of view of the player who played moveCode
+	private final long[] untried; // UNTRIED_WORDS words per node
+	private final int[] remap; // New index of every slot while a subtree is kept
+
+	private int size;
+
+	public NodePool (int capacity) {
+		parent = new int[capacity];
+		firstChild = new int[capacity];
+		childCount = new short[capacity];
+		moveCode = new short[capacity];
+		visits = new int[capacity];
+		valueSum = new double[capacity];
+		untried = new long[capacity * UNTRIED_WORDS];
+		remap = new int[capacity];
+	}
+
+	/**
+	 * Drops every node and creates a fresh root
+	 * @return the root index
+	 */
+	public int reset () {
+		size = 1;
+		initNode(0, NONE, NONE);
+		return 0;
+	}
+
+	/**
+	 * Drops every node outside the subtree of node, and moves the subtree to the
+	 * front of the pool with node as the new root. Descendants always have higher
+	 * indices than their ancestors, so slots are renumbered in increasing order
+	 * and each one is copied down to an index no higher than its own.
+	 * @return the root index
+	 */
+	public int keepSubtree (int node) {
+		int next = 0;
+
+		if (node == 0)
+			return 0;
+
+		// Number the kept slots in order, whole child blocks at a time
+		Arrays.fill(remap, node, size, NONE);
+		remap[node] = KEEP;
+		for (int o = node; o < size; o++) {
+			if (remap[o] != KEEP)
+				continue;
+
+			remap[o] = next++;
+			if (firstChild[o] != NONE)
+				Arrays.fill(remap, firstChild[o], firstChild[o] + blockSize(o), KEEP);
+		}
+
+		for (int o = node; o < size; o++) {
+			int n = remap[o];
+			if (n == NONE)
+				continue;
+
+			parent[n] = (o == node) ? NONE : remap[parent[o]];
+			firstChild[n] = (firstChild[o] == NONE) ? NONE : remap[firstChild[o]];
+			childCount[n] = childCount[o];
+			moveCode[n] = moveCode[o];
+			visits[n] = visits[o];
+			valueSum[n] = valueSum[o];
+			System.arraycopy(untried, o * UNTRIED_WORDS, untried, n * UNTRIED_WORDS, UNTRIED_WORDS);
+		}
+		size = next;
+		return 0;
+	}
+
+	/**
+	 * @return the number of slots reserved for the children of node
+	 */
+	private int blockSize (int node) {
+		int base = node * UNTRIED_WORDS;
+		int numUntried = 0;
+
+		for (int w = 0; w < UNTRIED_WORDS; w++)
+			numUntried += Long.bitCount(untried[base + w]);
+		return childCount[node] + numUntried;
+	}
+
+	private void initNode (int n, int parentIdx, int code) {
+		parent[n] = parentIdx;
+		firstChild[n] = NONE;
+		childCount[n] = 0;
+		moveCode[n] = (short) code;
+		visits[n] = 0;
+		valueSum[n] = 0;
+	}
+
+	public int capacity () { return parent.length; }
+
+	public int size () { return size; }
+
+	/**
+	 * @return true if node could reserve a block for numMoves children
+	 */
+	public boolean canReserve (int numMoves) { return size + numMoves <= parent.length; }
+
+	/**
+	 * Reserves the child block of node and marks the given legal moves as untried.
+	 * Slots of the block are cleared, so that none of them points into the pool
+	 * before it is expanded.
+	 */
+	public void reserveChildren (int node, int[] moves, int numMoves) {
+		firstChild[node] = size;
+		for (int i = 0; i < numMoves; i++)
+			initNode(size + i, node, NONE);
+		size += numMoves;
+
+		int base = node * UNTRIED_WORDS;
+		for (int w = 0; w < UNTRIED_WORDS; w++)
+			untried[base + w] = 0L;
+		for (int i = 0; i < numMoves; i++)
+			untried[base + (moves[i] >>> 6)] |= 1L << moves[i];
+	}
+
+	public boolean isReserved (int node) { return firstChild[node] != NONE; }
+
+	public boolean hasUntried (int node) {
+		int base = node * UNTRIED_WORDS;
+		for (int w = 0; w < UNTRIED_WORDS; w++)
+			if (untried[base + w] != 0)
+				return true;
+		return false;
+	}
+
+	/**
+	 * Removes a uniformly random untried move from node and creates its child
+	 * @return the new child index
+	 */
+	public int expandRandom (int node, SplittableRandom rng) {
+		int base = node * UNTRIED_WORDS;
+		int count = 0;
+		for (int w = 0; w < UNTRIED_WORDS; w++)
+			count += Long.bitCount(untried[base + w]);
+
+		int k = rng.nextInt(count);
+		int w = 0;
+		while (k >= Long.bitCount(untried[base + w]))
+			k -= Long.bitCount(untried[base + w++]);
+
+		long word = untried[base + w];
+		for (; k > 0; k--)
+			word &= word - 1;
+		int bit = Long.numberOfTrailingZeros(word);
+		untried[base + w] &= ~(1L << bit);
+
+		return expand(node, w * 64 + bit);
+	}
+
+	private int expand (int node, int code) {
+		int slot = firstChild[node] + childCount[node]++;
+		initNode(slot, node, code);
+		return slot;
+	}
+
+	/**
+	 * Adds one visit with the given value to node and all its ancestors. The value is
+	 * from the point of view of the player who moved into node, and flips sign at
+	 * every level.
+	 */
+	public void backpropagate (int node, double value) {
+		for (int n = node; n != NONE; n = parent[n]) {
+			visits[n]++;
+			valueSum[n] += value;
+			value = -value;
+		}
+	}
+
+	public int parent (int node) { return parent[node]; }
+
+	public int firstChild (int node) { return firstChild[node]; }
+
+	public int childCount (int node) { return childCount[node]; }
+
+	public int moveCode (int node) { return moveCode[node]; }
+
+	public int visits (int node) { return visits[node]; }
+
+	public double valueSum (int node) { return valueSum[node]; }
+}
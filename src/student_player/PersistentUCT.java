@@ -4,6 +4,7 @@ package student_player;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.SplittableRandom;
 import java.lang.Math;
 
 import pentago_swap.PentagoBoardState;
@@ -21,21 +22,72 @@ public class PersistentUCT {
 		REWARD = 100,
 		PENALTY = -100;
 	
-	private static int playerTurn;
+	// Approximate heap cost of one node with its state and move lists, measured on full trees
+	public static final int BYTES_PER_NODE = 1100;
+	
+	private final int playerTurn;
+	private final int numSims;
+	private final double cParam;
+	private final int nodeBudget;
+	private final RolloutPolicy policy;
 	
 	private MCTS mcts;
-	private int numSims;
+	private int numNodes = 1;
+	private int numEvicted; // Since the last move was chosen
+	private TimeManager timer = new TimeManager();
+	private SplittableRandom rng = new SplittableRandom();
 	
-	public PersistentUCT (PentagoBoardState state, int playerTurn, int numSims) {
+	private Thread ponderThread;
+	private volatile boolean pondering;
+	
+	public PersistentUCT (PentagoBoardState state, EngineConfig config) {
+		this.playerTurn = config.getPlayerTurn();
+		this.numSims = config.getNumSims();
+		this.cParam = config.getCParam();
+		this.nodeBudget = config.getNodeBudget(BYTES_PER_NODE);
+		this.policy = config.getRolloutPolicy();
 		mcts = new MCTS(new Node(state));
-		this.playerTurn = playerTurn;
-		this.numSims = numSims;
+	}
+	
+	public PersistentUCT (PentagoBoardState state, int playerTurn, int numSims) {
+		this(state, new EngineConfig(playerTurn, numSims));
 	}
 	
 	public PentagoMove chooseMove (PentagoBoardState state, long simTime) {
+		stopPondering();
+		
 		return mcts.chooseMove(state, numSims, simTime);
 	}
 	
+	/**
+	 * Keeps growing the tree from the current root, the position after our last
+	 * move, on a background thread until stopPondering() is called
+	 */
+	public void startPondering () {
+		stopPondering();
+		
+		pondering = true;
+		ponderThread = new Thread(() -> mcts.ponder(), "PersistentUCT ponder");
+		ponderThread.setDaemon(true);
+		ponderThread.start();
+	}
+	
+	/**
+	 * Stops the background search and waits for it, so that the tree can be used again
+	 */
+	public void stopPondering () {
+		if (ponderThread == null)
+			return;
+		
+		pondering = false;
+		try {
+			ponderThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		ponderThread = null;
+	}
+	
 	/**
 	 * Monte Carlo Tree Search
 	 * 
@@ -51,46 +103,94 @@ public class PersistentUCT {
 		public PentagoMove chooseMove (PentagoBoardState state, int numSims, long simTime) {
 			Node node, bestChild;
 			int winner;
-			long startTime = System.nanoTime();
-			long timeLimit = System.currentTimeMillis() + simTime;
+			timer.start(simTime);
 			
-			if ( root.hasChildren() ) {
-				boolean stateFound = false;
+			if (! root.state.equals(state)) {
+				Node reply = root.findChild(state);
 				
-				Utils.print("root children not empty");
-				for (Node c : root.children) {
-					if (Utils.areSameState(c.state, state)) {
-						setRoot(c);
-						stateFound = true;
-						Utils.print("Same state found!");
-						break;
-					}
-				}
-				
-				if (! stateFound) {
+				if (reply != null) {
+					setRoot(reply);
+					Utils.print("Same state found! Kept nodes: " + numNodes);
+				} else {
 					root = new Node(state);
+					numNodes = 1;
 				}
 			}
 			
-			//for (int i = 0; i < numSims; i++) {
-			while (System.currentTimeMillis() < timeLimit) {
+			while (timer.hasTime()) {
+				if (numNodes >= nodeBudget)
+					evict();
+				
 				node = treePolicy();
 				winner = node.rollout();
 				node.backpropagate(winner);
+				
+				if (timer.isCheckpoint())
+					stopIfDecided();
 			}
 			
 			bestChild = root.bestChild(.0);
 			setRoot(bestChild);
-			
-			long endTime = System.nanoTime();
-			long timeElapsed = endTime - startTime;
+			Utils.print("Kept nodes: " + numNodes + "/" + nodeBudget + ", evicted: " + numEvicted);
+			numEvicted = 0;
 			
 			Utils.print("Elapsed time (ms):");
-			Utils.print(timeElapsed / 1000000);
+			Utils.print(timer.getElapsedMillis());
 			
 			return bestChild.a();
 		}
 		
+		/**
+		 * Lets timer stop the search once the child that would be played has a mean
+		 * reward above every other child's, within confidence bounds. Visits made
+		 * while pondering count, so a reply searched on the opponent's clock can be
+		 * played early.
+		 */
+		private void stopIfDecided () {
+			if (root.isTerminalNode() || ! root.isFullyExpanded())
+				return; // Untried moves could be better
+			
+			int numChildren = root.children.size();
+			double[] means = new double[numChildren];
+			int[] visits = new int[numChildren];
+			
+			for (int i = 0; i < numChildren; i++) {
+				means[i] = root.children.get(i).qsa();
+				visits[i] = root.children.get(i).nsa();
+			}
+			timer.stopIfSeparated(means, visits, root.children.indexOf(root.bestChild(.0)), PersistentUCT.REWARD - PersistentUCT.PENALTY);
+		}
+		
+		/**
+		 * Search loop of the pondering thread
+		 */
+		public void ponder () {
+			Node node;
+			int winner;
+			int numSims = 0;
+			
+			while (pondering && ! root.isTerminalNode()) {
+				if (numNodes >= nodeBudget)
+					evict();
+				
+				node = treePolicy();
+				winner = node.rollout();
+				node.backpropagate(winner);
+				numSims++;
+			}
+			Utils.print("Pondered simulations: " + numSims);
+		}
+		
+		/**
+		 * Frees part of the node budget, see TreeBudget.evict
+		 */
+		private void evict () {
+			int freed = TreeBudget.evict(root, numNodes, nodeBudget);
+			
+			numNodes -= freed;
+			numEvicted += freed;
+		}
+		
 		public Node treePolicy () {
 			Node curNode = root;
 			
@@ -99,12 +199,20 @@ public class PersistentUCT {
 					return curNode.expand();
 				
 				else
-					curNode = curNode.bestChild(1.4);
+					curNode = curNode.bestChild(cParam);
 			}
 			return curNode;
 		}
 		
-		public void setRoot (Node node) { root = node; }
+		/**
+		 * Promotes node to root and detaches it from its parent, so that the old
+		 * root and all sibling subtrees can be garbage collected
+		 */
+		public void setRoot (Node node) {
+			node.setParent(null);
+			root = node;
+			numNodes = root.subtreeSize();
+		}
 	}
 	
 	/**
@@ -113,7 +221,7 @@ public class PersistentUCT {
 	 * @author Le Nhat Hung
 	 *
 	 */
-	public class Node {
+	public class Node implements TreeBudget.Evictable<Node> {
 
 		Node parent;
 		List<Node> children;
@@ -123,7 +231,7 @@ public class PersistentUCT {
 		
 		ArrayList<PentagoMove> untriedMoves;
 		
-		double moveValue; // Qsa
+		double moveValue; // Qsa, the running mean of the rewards
 		int visitCount; // Nsa
 		
 		public Node (PentagoBoardState state) {
@@ -152,6 +260,7 @@ public class PersistentUCT {
 			);
 			child.setParent(this);
 			addChild(child);
+			numNodes++;
 			
 			return child;
 		}
@@ -169,7 +278,7 @@ public class PersistentUCT {
 		}
 		
 		public PentagoMove rolloutPolicy (PentagoBoardState state) {
-			return (PentagoMove) state.getRandomMove();
+			return PentagoMove.fromCode(policy.chooseMoveCode(state, rng), state.getTurnPlayer());
 		}
 		
 		public void backpropagate (int winner) {
@@ -215,7 +324,7 @@ public class PersistentUCT {
 		}
 		
 		public void updateQsa (int winner) {
-			if (winner == PersistentUCT.playerTurn)
+			if (winner == playerTurn)
 				moveValue += (PersistentUCT.REWARD  - qsa()) / nsa();
 			else
 				moveValue += (PersistentUCT.PENALTY - qsa()) / nsa();
@@ -237,6 +346,30 @@ public class PersistentUCT {
 		
 		public void addChild (Node child) { children.add(child); }
 		
+		/**
+		 * Finds the child reached by the opponent's reply, comparing Zobrist hashes
+		 * before boards
+		 * @return the child whose state equals s, or null
+		 */
+		public Node findChild (PentagoBoardState s) {
+			for (Node c : children)
+				if (c.state.getHash() == s.getHash() && c.state.equals(s))
+					return c;
+			return null;
+		}
+		
+		@Override
+		public List<Node> children () { return children; }
+		
+		/**
+		 * Forgets the children of this node, whose moves become untried again
+		 */
+		@Override
+		public void dropChildren () {
+			children = new ArrayList<Node>();
+			untriedMoves = null;
+		}
+		
 		public boolean hasChildren () {
 			return !( children.isEmpty() || children == null );
 		}
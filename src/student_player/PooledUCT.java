@@ -0,0 +1,233 @@
+// File name: PooledUCT
+
+package student_player;
+
+import java.util.SplittableRandom;
+import java.lang.Math;
+
+import boardgame.Board;
+
+import pentago_swap.PentagoBoardState;
+import pentago_swap.PentagoMove;
+
+/**
+ * UCT for Pentago Swap on a preallocated NodePool
+ * 
+ * The tree is a set of primitive arrays instead of Node objects, and node states
+ * are rebuilt by replaying moves onto one scratch state with applyMove/undoMove,
+ * so a search allocates almost nothing. Values are kept from the point of view
+ * of the player who made each move, so the colour in the config is not used.
+ * 
+ * The tree is kept between moves: the subtree of the position reached by our
+ * move and the opponent's reply is compacted to the front of the pool.
+ * 
+ * @author Le Nhat Hung
+ *
+ */
+public class PooledUCT {
+	
+	public static final double
+		WIN = 1.,
+		LOSS = -1.,
+		DRAW = 0.;
+	
+	private final int numSims; // Maximum number of simulations per move, 0 for no maximum
+	private final double cParam;
+	private final RolloutPolicy policy;
+	
+	private NodePool pool;
+	private PentagoBoardState rootState; // Position of the pool root, null before the first search
+	private SplittableRandom rng = new SplittableRandom();
+	private int[] moveBuf = new int[PentagoMove.NUM_CODES];
+	private TimeManager timer = new TimeManager();
+	
+	public PooledUCT (EngineConfig config) {
+		this.numSims = config.getNumSims();
+		this.cParam = config.getCParam();
+		this.policy = config.getRolloutPolicy();
+		pool = new NodePool(config.getNodeBudget(NodePool.BYTES_PER_NODE));
+	}
+	
+	public PooledUCT (int capacity) {
+		this(new EngineConfig(0, 0).withNodeBudget(capacity));
+	}
+	
+	public PentagoMove chooseMove (PentagoBoardState state, long simTime) {
+		PentagoBoardState scratch = (PentagoBoardState) state.clone();
+		int reached = findNode(state);
+		int root;
+		int simCount = 0;
+		
+		timer.start(simTime);
+		
+		if (reached == NodePool.NONE) {
+			root = pool.reset();
+		} else {
+			root = pool.keepSubtree(reached);
+			Utils.print("Same state found! Kept nodes: " + pool.size());
+		}
+		rootState = (PentagoBoardState) state.clone();
+		
+		do {
+			int leaf = treePolicy(root, scratch);
+			int leafMover = 1 - scratch.getTurnPlayer();
+			int winner = rollout(scratch);
+			
+			pool.backpropagate(leaf, value(winner, leafMover));
+			
+			while (scratch.getUndoDepth() > 0)
+				scratch.undoMove();
+			simCount++;
+			
+			if (timer.isCheckpoint())
+				stopIfDecided(root);
+		} while ((numSims <= 0 || simCount < numSims) && timer.hasTime());
+		
+		Utils.print("Elapsed time (ms):");
+		Utils.print(timer.getElapsedMillis());
+		Utils.print("Simulations: " + simCount + ", nodes: " + pool.size() + "/" + pool.capacity());
+		
+		int best = mostVisitedChild(root);
+		if (best == NodePool.NONE)
+			return (PentagoMove) state.getRandomMove(); // Pool was full before the root got a child
+		
+		return PentagoMove.fromCode(pool.moveCode(best), state.getTurnPlayer());
+	}
+	
+	/**
+	 * Looks for state at the pool root and at the two levels below it, which cover
+	 * our last move followed by the opponent's reply
+	 * @return the node of state, or NodePool.NONE
+	 */
+	private int findNode (PentagoBoardState state) {
+		if (rootState == null)
+			return NodePool.NONE;
+		
+		PentagoBoardState scratch = (PentagoBoardState) rootState.clone();
+		
+		if (isState(scratch, state))
+			return 0;
+		
+		for (int i = 0; i < pool.childCount(0); i++) {
+			int child = pool.firstChild(0) + i;
+			
+			scratch.applyMove(pool.moveCode(child));
+			if (isState(scratch, state))
+				return child;
+			
+			for (int j = 0; j < pool.childCount(child); j++) {
+				int grandchild = pool.firstChild(child) + j;
+				
+				scratch.applyMove(pool.moveCode(grandchild));
+				if (isState(scratch, state))
+					return grandchild;
+				scratch.undoMove();
+			}
+			scratch.undoMove();
+		}
+		return NodePool.NONE;
+	}
+	
+	/**
+	 * Compares Zobrist hashes before boards
+	 */
+	private static boolean isState (PentagoBoardState s, PentagoBoardState state) {
+		return s.getHash() == state.getHash() && s.equals(state);
+	}
+	
+	/**
+	 * Descends from root, playing each move on scratch, and expands one child
+	 * @return the node to roll out from, whose state scratch now holds
+	 */
+	private int treePolicy (int root, PentagoBoardState scratch) {
+		int node = root;
+		
+		while (! scratch.gameOver()) {
+			if (! pool.isReserved(node)) {
+				int numMoves = scratch.getLegalMoves(moveBuf);
+				if (! pool.canReserve(numMoves))
+					return node; // Pool is full: evaluate this leaf as it is
+				pool.reserveChildren(node, moveBuf, numMoves);
+			}
+			
+			if (pool.hasUntried(node)) {
+				node = pool.expandRandom(node, rng);
+				scratch.applyMove(pool.moveCode(node));
+				return node;
+			}
+			
+			node = bestChild(node, cParam);
+			scratch.applyMove(pool.moveCode(node));
+		}
+		return node;
+	}
+	
+	private int rollout (PentagoBoardState scratch) {
+		while (! scratch.gameOver())
+			scratch.applyMove(policy.chooseMoveCode(scratch, rng));
+		
+		return scratch.getWinner();
+	}
+	
+	private static double value (int winner, int player) {
+		if (winner == player)
+			return WIN;
+		
+		else if (winner == Board.DRAW || winner == Board.NOBODY)
+			return DRAW;
+		
+		return LOSS;
+	}
+	
+	private int bestChild (int node, double cParam) {
+		int first = pool.firstChild(node);
+		int numChildren = pool.childCount(node);
+		double logN = Math.log(pool.visits(node));
+		double[] ucts = new double[numChildren];
+		
+		for (int i = 0; i < numChildren; i++) {
+			int child = first + i;
+			ucts[i] = pool.valueSum(child) / pool.visits(child)
+					+ cParam * Math.sqrt( logN / pool.visits(child) );
+		}
+		return first + Utils.argmax(ucts);
+	}
+	
+	/**
+	 * @return the most visited child of node, or NodePool.NONE if it has none
+	 */
+	private int mostVisitedChild (int node) {
+		int first = pool.firstChild(node);
+		int best = first;
+		
+		if (pool.childCount(node) == 0)
+			return NodePool.NONE;
+		
+		for (int i = 1; i < pool.childCount(node); i++)
+			if (pool.visits(first + i) > pool.visits(best))
+				best = first + i;
+		return best;
+	}
+	
+	/**
+	 * Lets timer stop the search once the most visited root child is out of reach
+	 */
+	private void stopIfDecided (int root) {
+		int first = pool.firstChild(root);
+		int best = 0, second = 0;
+		
+		for (int i = 0; i < pool.childCount(root); i++) {
+			int visits = pool.visits(first + i);
+			
+			if (visits > best) {
+				second = best;
+				best = visits;
+			} else if (visits > second) {
+				second = visits;
+			}
+		}
+		timer.stopIfDecided(best, second);
+	}
+	
+	public int getNodeCount () { return pool.size(); }
+}
@@ -0,0 +1,23 @@
+// File name: RandomRolloutPolicy
+
+package student_player;
+
+import java.util.SplittableRandom;
+
+import pentago_swap.PentagoBoardState;
+
+/**
+ * Uniformly random playouts
+ *
+ * @author Le Nhat Hung
+ *
+ */
+public class RandomRolloutPolicy implements RolloutPolicy {
+
+	public static final RandomRolloutPolicy INSTANCE = new RandomRolloutPolicy();
+
+	@Override
+	public int chooseMoveCode (PentagoBoardState state, SplittableRandom rng) {
+		return state.getRandomMoveCode(rng);
+	}
+}
@@ -0,0 +1,125 @@
+// File name: RolloutBenchmark
+
+package student_player;
+
+import java.util.SplittableRandom;
+
+import boardgame.Board;
+
+import pentago_swap.PentagoBoardState;
+import pentago_swap.PentagoMove;
+
+/**
+ * Measurement mode for rollout policies
+ *
+ * For every policy, reports playouts per second from the initial position and
+ * the score of the policy playing against the uniform random policy. With a
+ * number of engine games as third argument, also plays TimedUCT with each policy
+ * against TimedUCT with random rollouts at the same time per move, which is the
+ * strength per millisecond that counts.
+ *
+ * Usage: RolloutBenchmark [ms per speed test] [games against random] [engine games] [ms per move]
+ *
+ * @author Le Nhat Hung
+ *
+ */
+public class RolloutBenchmark {
+
+	private static final String[] NAMES = { "random", "tactical", "weighted" };
+	private static final RolloutPolicy[] POLICIES = {
+		RandomRolloutPolicy.INSTANCE, new TacticalRolloutPolicy(false), new TacticalRolloutPolicy(true)
+	};
+
+	public static void main (String[] args) {
+		long speedTime = args.length > 0 ? Long.parseLong(args[0]) : 2000;
+		int numGames = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+		int numEngineGames = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+		long moveTime = args.length > 3 ? Long.parseLong(args[3]) : 200;
+		SplittableRandom rng = new SplittableRandom(2019);
+		String[] report = new String[POLICIES.length];
+
+		for (int p = 0; p < POLICIES.length; p++) {
+			double playoutsPerSec = playoutsPerSecond(POLICIES[p], speedTime, rng);
+			double score = scoreAgainstRandom(POLICIES[p], numGames, rng);
+
+			report[p] = String.format("%-10s %10.0f playouts/s   %5.1f%% against random", NAMES[p], playoutsPerSec, 100 * score);
+
+			if (numEngineGames > 0 && POLICIES[p] != RandomRolloutPolicy.INSTANCE)
+				report[p] += String.format("   TimedUCT %5.1f%% against TimedUCT with random rollouts",
+						100 * engineScore(POLICIES[p], numEngineGames, moveTime));
+		}
+
+		for (String line : report)
+			Utils.print(line);
+	}
+
+	private static double playoutsPerSecond (RolloutPolicy policy, long time, SplittableRandom rng) {
+		PentagoBoardState start = PentagoBoardState.fromPackedKey(0);
+		long startTime = System.nanoTime();
+		long deadline = startTime + time * 1000000;
+		int numPlayouts = 0;
+
+		while (System.nanoTime() < deadline) {
+			PentagoBoardState state = (PentagoBoardState) start.clone();
+
+			while (! state.gameOver())
+				state.applyMove(policy.chooseMoveCode(state, rng));
+			numPlayouts++;
+		}
+		return numPlayouts / ((System.nanoTime() - startTime) / 1e9);
+	}
+
+	/**
+	 * Plays policy against uniform random playouts, alternating colours
+	 * @return the score of policy, counting draws as half a win
+	 */
+	private static double scoreAgainstRandom (RolloutPolicy policy, int numGames, SplittableRandom rng) {
+		double score = 0;
+
+		for (int g = 0; g < numGames; g++) {
+			PentagoBoardState state = PentagoBoardState.fromPackedKey(0);
+			int policyPlayer = g % 2;
+
+			while (! state.gameOver()) {
+				RolloutPolicy mover = (state.getTurnPlayer() == policyPlayer) ? policy : RandomRolloutPolicy.INSTANCE;
+				state.applyMove(mover.chooseMoveCode(state, rng));
+			}
+			score += score(state.getWinner(), policyPlayer);
+		}
+		return score / numGames;
+	}
+
+	/**
+	 * Plays TimedUCT using policy against TimedUCT using random rollouts, alternating colours
+	 * @return the score of the engine using policy
+	 */
+	private static double engineScore (RolloutPolicy policy, int numGames, long moveTime) {
+		double score = 0;
+
+		for (int g = 0; g < numGames; g++) {
+			PentagoBoardState state = PentagoBoardState.fromPackedKey(0);
+			int policyPlayer = g % 2;
+			TimedUCT[] engines = {
+				new TimedUCT(new EngineConfig(0, 0).withRolloutPolicy(policyPlayer == 0 ? policy : RandomRolloutPolicy.INSTANCE)),
+				new TimedUCT(new EngineConfig(1, 0).withRolloutPolicy(policyPlayer == 1 ? policy : RandomRolloutPolicy.INSTANCE))
+			};
+
+			while (! state.gameOver()) {
+				PentagoMove m = engines[state.getTurnPlayer()].chooseMove((PentagoBoardState) state.clone(), moveTime);
+				state.processMove(m);
+			}
+			score += score(state.getWinner(), policyPlayer);
+		}
+		return score / numGames;
+	}
+
+	private static double score (int winner, int player) {
+		if (winner == player)
+			return 1.;
+
+		else if (winner == Board.DRAW || winner == Board.NOBODY)
+			return .5;
+
+		return 0.;
+	}
+}
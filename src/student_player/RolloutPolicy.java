@@ -0,0 +1,25 @@
+// File name: RolloutPolicy
+
+package student_player;
+
+import java.util.SplittableRandom;
+
+import pentago_swap.PentagoBoardState;
+
+/**
+ * Move choice during MCTS playouts
+ *
+ * Engines share policies through EngineConfig, so implementations must be safe
+ * to call from several threads at once.
+ *
+ * @author Le Nhat Hung
+ *
+ */
+public interface RolloutPolicy {
+
+	/**
+	 * @param state a position that is not over
+	 * @return the code of the move to play, as in PentagoMove.getMoveCode()
+	 */
+	int chooseMoveCode (PentagoBoardState state, SplittableRandom rng);
+}
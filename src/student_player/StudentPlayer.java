@@ -12,7 +12,7 @@ public class StudentPlayer extends PentagoPlayer {
 		studentNumber = "260793376";
 	
 	private UCT ai;
-	private final int NUM_SIMS = 10000;
+	private final int NUM_SIMS = 0; // No maximum: the node budget bounds the tree
 	
     /**
      * You must modify this constructor to return your student number. This is
@@ -54,7 +54,7 @@ public class StudentPlayer extends PentagoPlayer {
         		NUM_SIMS
         	);
     	
-    	myMove = ai.chooseMove(boardState, 1700);
+    	myMove = ai.chooseMove(boardState, TimeManager.planBudget(boardState));
 		
         // Return your move to be processed by the server.
         return myMove;
@@ -35,21 +35,14 @@ public class StudentPlayer2 extends PentagoPlayer {
  
     	Move myMove;
     	
-    	if (ai == null) {
+    	if (ai == null)
     		ai = new TimedUCT(
         		//boardState,
         		boardState.getTurnPlayer(), // Colour of player (BLACK or WHITE)
         		NUM_SIMS
         	);
-    		myMove = ai.chooseMove(boardState, 25000);
     	
-    	} else {
-    		//Utils.print("cur board state");
-    		//boardState.printBoard();
-    		
-            //Move myMove = boardState.getRandomMove();
-    		myMove = ai.chooseMove(boardState, 1700);
-    	}
+    	myMove = ai.chooseMove(boardState, TimeManager.planBudget(boardState));
     	
     	// Return your move to be processed by the server.
         return myMove;
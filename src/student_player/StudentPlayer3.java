@@ -0,0 +1,66 @@
+package student_player;
+
+import boardgame.BoardState;
+import boardgame.Move;
+
+import pentago_swap.PentagoPlayer;
+import pentago_swap.PentagoBoardState;
+
+/** A player file submitted by a student. Searches on the opponent's clock too. */
+public class StudentPlayer3 extends PentagoPlayer {
+
+	private static String
+		studentNumber = "ponder";
+
+	private PersistentUCT ai;
+	private final int NUM_SIMS = 0;
+
+    /**
+     * You must modify this constructor to return your student number. This is
+     * important, because this is what the code that runs the competition uses to
+     * associate you with your agent. The constructor should do nothing else.
+     */
+    public StudentPlayer3() {
+        super(studentNumber);
+    }
+
+    /**
+     * This is the primary method that you need to implement. The ``boardState``
+     * object contains the current state of the game, which your agent must use to
+     * make decisions.
+     */
+    public Move chooseMove (PentagoBoardState boardState) {
+    	Move myMove;
+
+    	if (ai == null)
+    		ai = new PersistentUCT(
+        		boardState,
+        		boardState.getTurnPlayer(), // Colour of player (BLACK or WHITE)
+        		NUM_SIMS
+        	);
+
+    	myMove = ai.chooseMove(boardState, TimeManager.planBudget(boardState));
+
+    	// Keep searching while our move is sent and the opponent thinks
+    	ai.startPondering();
+
+        // Return your move to be processed by the server.
+        return myMove;
+    }
+
+    /**
+     * The opponent's move has arrived: stop pondering so that chooseMove() continues
+     * from the subtree of that move. Our own move echoed by the server is ignored.
+     */
+    @Override
+    public void movePlayed (BoardState boardState, Move move) {
+    	if (ai != null && move.getPlayerID() != player_id)
+    		ai.stopPondering();
+    }
+
+    @Override
+    public void gameOver (String msg, BoardState boardState) {
+    	if (ai != null)
+    		ai.stopPondering();
+    }
+}
@@ -0,0 +1,72 @@
+// File name: TacticalRolloutPolicy
+
+package student_player;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import pentago_swap.PentagoBoardState;
+import pentago_swap.PentagoMove;
+
+/**
+ * Heavy playouts for Pentago Swap
+ *
+ * Plays an immediate win when there is one, never plays a swap that hands the
+ * opponent five in a row unless every move does, and otherwise samples a safe
+ * move. With pattern weights, a safe move is drawn with probability proportional
+ * to the weight of its cell, which grows with the pieces on the open lines
+ * through it for both players, so extending our lines and blocking the
+ * opponent's are both preferred. Without them it is drawn uniformly, at about
+ * twice the speed.
+ *
+ * @author Le Nhat Hung
+ *
+ */
+public class TacticalRolloutPolicy implements RolloutPolicy {
+
+	private static final int NUM_CELLS = PentagoBoardState.BOARD_SIZE * PentagoBoardState.BOARD_SIZE;
+
+	// Per-thread move and weight buffers
+	private final ThreadLocal<int[]> moveBufs = ThreadLocal.withInitial(() -> new int[PentagoMove.NUM_CODES]);
+	private final ThreadLocal<int[]> weightBufs = ThreadLocal.withInitial(() -> new int[NUM_CELLS]);
+
+	private final boolean patternWeights;
+
+	public TacticalRolloutPolicy (boolean patternWeights) {
+		this.patternWeights = patternWeights;
+	}
+
+	@Override
+	public int chooseMoveCode (PentagoBoardState state, SplittableRandom rng) {
+		int[] moves = moveBufs.get();
+		int numMoves = state.getWinningMoves(moves);
+
+		if (numMoves > 0)
+			return moves[rng.nextInt(numMoves)];
+
+		numMoves = state.getSafeMoves(moves);
+		if (numMoves == 0)
+			return state.getRandomMoveCode(rng); // Every move loses
+
+		if (! patternWeights)
+			return moves[rng.nextInt(numMoves)];
+
+		int[] weights = weightBufs.get();
+		int totalWeight = 0;
+
+		Arrays.fill(weights, 1);
+		state.addOpenLineWeights(state.getTurnPlayer(), weights);
+		state.addOpenLineWeights(state.getOpponent(), weights);
+
+		for (int i = 0; i < numMoves; i++)
+			totalWeight += weights[moves[i] / PentagoMove.NUM_SWAPS];
+
+		int r = rng.nextInt(totalWeight);
+		for (int i = 0; i < numMoves; i++) {
+			r -= weights[moves[i] / PentagoMove.NUM_SWAPS];
+			if (r < 0)
+				return moves[i];
+		}
+		return moves[numMoves - 1];
+	}
+}
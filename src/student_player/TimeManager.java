@@ -0,0 +1,136 @@
+// File name: TimeManager
+
+package student_player;
+
+import boardgame.Server;
+
+import pentago_swap.PentagoBoardState;
+
+/**
+ * Time control shared by the search engines
+ *
+ * Plans the budget of a move from the server limits, and keeps a monotonic
+ * System.nanoTime deadline that is only read every CHECK_INTERVAL iterations.
+ * Engines that play their most visited root child can also stop early once
+ * that child can no longer be overtaken in the time left. Engines that play
+ * their best valued child stop once its mean reward is separated from every
+ * other child's by confidence bounds.
+ *
+ * @author Le Nhat Hung
+ *
+ */
+public class TimeManager {
+
+	// Kept back from the server limit for sending the move and for garbage collection (ms)
+	public static final long SAFETY_MARGIN = 300;
+
+	// Iterations between two reads of the clock
+	public static final int CHECK_INTERVAL = 16;
+
+	// Probability that a mean lies outside its confidence bound
+	public static final double STOP_DELTA = .001;
+
+	private long startTime;
+	private long deadline;
+	private int iterations;
+	private boolean stopped;
+
+	/**
+	 * The server gives FIRST_MOVE_TIMEOUT for each player's first move and
+	 * DEFAULT_TIMEOUT for every other move. Time left over is not carried to later
+	 * moves, so the whole limit of the move is planned, less SAFETY_MARGIN.
+	 * @return the budget of the move to play in state (ms)
+	 */
+	public static long planBudget (PentagoBoardState state) {
+		long limit = (state.getTurnNumber() == 0) ? Server.FIRST_MOVE_TIMEOUT : Server.DEFAULT_TIMEOUT;
+
+		return limit - SAFETY_MARGIN;
+	}
+
+	/**
+	 * @param budget time from now to the deadline (ms)
+	 */
+	public void start (long budget) {
+		startTime = System.nanoTime();
+		deadline = startTime + budget * 1000000;
+		iterations = 0;
+		stopped = false;
+	}
+
+	/**
+	 * Starts with the same deadline as other, for a worker thread
+	 */
+	public void start (TimeManager other) {
+		startTime = other.startTime;
+		deadline = other.deadline;
+		iterations = 0;
+		stopped = false;
+	}
+
+	/**
+	 * Counts one iteration and reads the clock every CHECK_INTERVAL iterations
+	 * @return false once the deadline has passed or the search was stopped
+	 */
+	public boolean hasTime () {
+		if (stopped)
+			return false;
+
+		if (iterations++ % CHECK_INTERVAL != 0)
+			return true;
+
+		return System.nanoTime() < deadline;
+	}
+
+	/**
+	 * @return true if the last call to hasTime() read the clock
+	 */
+	public boolean isCheckpoint () { return (iterations - 1) % CHECK_INTERVAL == 0; }
+
+	/**
+	 * Stops the search if the gap between the two most visited root children is
+	 * larger than the number of iterations expected before the deadline
+	 */
+	public void stopIfDecided (int bestVisits, int secondVisits) {
+		long now = System.nanoTime();
+		long elapsed = Math.max(1, now - startTime);
+		double remaining = (double) iterations * (deadline - now) / elapsed;
+
+		if (bestVisits - secondVisits > remaining)
+			stopped = true;
+	}
+
+	/**
+	 * Stops the search if the lower confidence bound of the mean reward of the
+	 * child at best is above the upper bound of every other child. Engines only
+	 * call it once no untried move could still be better.
+	 * @param means mean reward of every root child, NaN for a child left out
+	 * @param visits visit count of every root child
+	 * @param best index of the child that would be played, or -1
+	 * @param range difference between the highest and lowest reward
+	 */
+	public void stopIfSeparated (double[] means, int[] visits, int best, double range) {
+		double rivalUpper = Double.NEGATIVE_INFINITY;
+
+		if (best < 0 || Double.isNaN(means[best]))
+			return;
+
+		for (int i = 0; i < means.length; i++)
+			if (i != best && ! Double.isNaN(means[i]))
+				rivalUpper = Math.max(rivalUpper, means[i] + confidenceRadius(visits[i], range));
+
+		if (means[best] - confidenceRadius(visits[best], range) > rivalUpper)
+			stopped = true;
+	}
+
+	/**
+	 * Hoeffding bound on the distance between the observed and true mean
+	 * @param range difference between the highest and lowest reward
+	 */
+	private static double confidenceRadius (int visits, double range) {
+		return range * Math.sqrt( Math.log(1 / STOP_DELTA) / (2. * Math.max(1, visits)) );
+	}
+
+	public int getIterations () { return iterations; }
+
+	public long getElapsedMillis () { return (System.nanoTime() - startTime) / 1000000; }
+}
@@ -3,9 +3,17 @@
 package student_player;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.lang.Math;
 
+import boardgame.Board;
+
 import pentago_swap.PentagoBoardState;
 import pentago_swap.PentagoMove;
 
@@ -21,24 +29,165 @@ public class TimedUCT {
 		REWARD = 100,
 		PENALTY = -100;
 	
-	private static int playerTurn;
+	// Game-theoretic value of a node, from the point of view of playerTurn
+	public static final int
+		PROVEN_LOSS = -1,
+		PROVEN_DRAW = 0,
+		PROVEN_WIN = 1,
+		UNPROVEN = 2;
+	
+	// Time kept back from the budget for merging root-parallel trees (ms)
+	private static final long MERGE_MARGIN = 20;
+	
+	// Approximate heap cost of one node, measured on full trees: a stateful node
+	// holds a board, a stateless one only its move, statistics and untried mask
+	public static final int
+		BYTES_PER_NODE = 200,
+		BYTES_PER_STATELESS_NODE = 120;
+	
+	// Words of the 216-bit untried move mask
+	private static final int UNTRIED_WORDS = (PentagoMove.NUM_CODES + 63) / 64;
+	
+	// Shared by all TimedUCT instances for root-parallel workers. Threads are made
+	// on demand and end after a minute idle, so engines need no shutdown.
+	private static final ExecutorService WORKERS = Executors.newCachedThreadPool(r -> {
+		Thread t = new Thread(r, "TimedUCT worker");
+		t.setDaemon(true);
+		return t;
+	});
+	
+	private final EngineConfig config;
+	private final int playerTurn;
+	private final int numSims;
+	private final double cParam;
+	private final boolean statelessNodes;
+	private final int numThreads;
+	private final int nodeBudget;
+	private final RolloutPolicy policy;
 	
 	private MCTS mcts;
-	private int numSims;
+	private int numNodes;
+	private int numEvicted; // During the current move
+	private TimeManager timer = new TimeManager();
+	private SplittableRandom rng = new SplittableRandom();
+	private final int[] moveBuf = new int[PentagoMove.NUM_CODES];
+	
+	/**
+	 * With more than one thread, independent trees are grown in parallel from the
+	 * root and their root statistics are merged to choose the move
+	 */
+	public TimedUCT (EngineConfig config) {
+		this.config = config;
+		this.playerTurn = config.getPlayerTurn();
+		this.numSims = config.getNumSims();
+		this.cParam = config.getCParam();
+		this.statelessNodes = config.isStatelessNodes();
+		this.numThreads = config.getNumThreads();
+		this.nodeBudget = config.getNodeBudget(statelessNodes ? BYTES_PER_STATELESS_NODE : BYTES_PER_NODE);
+		this.policy = config.getRolloutPolicy();
+	}
 	
 	public TimedUCT (int playerTurn, int numSims) {
-		
-		this.playerTurn = playerTurn;
-		this.numSims = numSims;
+		this(new EngineConfig(playerTurn, numSims));
+	}
+	
+	public TimedUCT (int playerTurn, int numSims, boolean statelessNodes) {
+		this(new EngineConfig(playerTurn, numSims).withStatelessNodes(statelessNodes));
+	}
+	
+	public TimedUCT (int playerTurn, int numSims, boolean statelessNodes, int numThreads) {
+		this(new EngineConfig(playerTurn, numSims).withStatelessNodes(statelessNodes).withThreads(numThreads));
 	}
 	
 	public PentagoMove chooseMove (PentagoBoardState state, long simTime) {
 		
+		if (numThreads > 1)
+			return chooseMoveParallel(state, simTime);
+		
 		mcts = new MCTS(new Node(state));
 		
 		return mcts.chooseMove(state, numSims, simTime);
 	}
 	
+	/**
+	 * Root parallelisation: every worker grows its own tree from state until the
+	 * shared deadline, then root child visits and values are summed per move and
+	 * the most visited move is played. Proofs hold in every tree, so a move proven
+	 * won by any worker is played and one proven lost is not.
+	 */
+	private PentagoMove chooseMoveParallel (PentagoBoardState state, long simTime) {
+		List<Future<Node>> roots = new ArrayList<Future<Node>>();
+		int[] visits = new int[PentagoMove.NUM_CODES];
+		double[] values = new double[PentagoMove.NUM_CODES];
+		int[] proofs = new int[PentagoMove.NUM_CODES];
+		int bestCode = -1;
+		
+		Arrays.fill(proofs, UNPROVEN);
+		
+		timer.start(simTime - MERGE_MARGIN);
+		
+		for (int i = 0; i < numThreads; i++) {
+			TimedUCT worker = new TimedUCT(config.withThreads(1).withNodeBudget(nodeBudget / numThreads));
+			PentagoBoardState rootState = (PentagoBoardState) state.clone();
+			
+			worker.timer.start(timer);
+			roots.add(WORKERS.submit(() -> worker.search(rootState)));
+		}
+		
+		for (Future<Node> f : roots) {
+			try {
+				for (Node c : f.get().children) {
+					int code = c.a().getMoveCode();
+					if (c.isProven())
+						proofs[code] = c.proof;
+					visits[code] += c.nsa();
+					values[code] += c.qsa() * c.nsa();
+				}
+			} catch (InterruptedException | ExecutionException e) {
+				Utils.print("Root-parallel worker failed: " + e);
+			}
+		}
+		
+		for (int code = 0; code < PentagoMove.NUM_CODES; code++) {
+			if (proofs[code] == PROVEN_WIN) {
+				bestCode = code;
+				break;
+			}
+			if (visits[code] > 0 && (bestCode < 0 || isMergedBetter(code, bestCode, visits, proofs)))
+				bestCode = code;
+		}
+		
+		if (bestCode < 0)
+			return (PentagoMove) state.getRandomMove();
+		
+		Utils.print("Merged root visits: " + visits[bestCode] + ", Qsa: " + values[bestCode] / visits[bestCode] + ", proof: " + proofs[bestCode]);
+		return PentagoMove.fromCode(bestCode, state.getTurnPlayer());
+	}
+	
+	/**
+	 * @return true if merged move code beats best: moves not proven lost come
+	 * first, then the most visited
+	 */
+	private static boolean isMergedBetter (int code, int best, int[] visits, int[] proofs) {
+		boolean lost = proofs[code] == PROVEN_LOSS;
+		
+		if (lost != (proofs[best] == PROVEN_LOSS))
+			return ! lost;
+		
+		return visits[code] > visits[best];
+	}
+	
+	/**
+	 * Grows a new tree from state until the deadline of timer
+	 * @return the root of the tree
+	 */
+	private Node search (PentagoBoardState state) {
+		mcts = new MCTS(new Node(state));
+		mcts.search();
+		
+		return mcts.root;
+	}
+	
 	/**
 	 * Monte Carlo Tree Search
 	 * 
@@ -48,29 +197,93 @@ public class TimedUCT {
 	public class MCTS {
 		
 		private Node root;
+		private PentagoBoardState scratch; // Stateless mode: state of the node being visited
 		
-		public MCTS (Node root) { this.root = root; }
+		public MCTS (Node root) {
+			this.root = root;
+			numNodes = 1;
+			numEvicted = 0;
+			
+			if (statelessNodes)
+				scratch = root.s();
+		}
 		
 		public PentagoMove chooseMove (PentagoBoardState state, int numSims, long simTime) {
+			timer.start(simTime);
+			search();
+			
+			Utils.print("Elapsed time (ms):");
+			Utils.print(timer.getElapsedMillis());
+			Utils.print("Nodes: " + numNodes + "/" + nodeBudget + ", evicted: " + numEvicted);
+			
+			if (root.isProven())
+				Utils.print("Root proven: " + root.proof);
+			
+			return root.finalChild().a();
+		}
+		
+		public void search () {
 			Node node;
 			int winner;
-			long startTime = System.nanoTime();
-			long timeLimit = System.currentTimeMillis() + simTime;
-
-			//for (int i = 0; i < numSims; i++) {
-			while (System.currentTimeMillis() < timeLimit) {
-				node = treePolicy();
-				winner = node.rollout();
+			boolean terminal;
+			
+			// Stops early once the root is solved
+			while (timer.hasTime() && ! root.isProven()) {
+				if (numNodes >= nodeBudget)
+					evict();
+				
+				if (statelessNodes) {
+					node = statelessTreePolicy();
+					terminal = scratch.gameOver();
+					winner = node.rollout((PentagoBoardState) scratch.clone());
+				} else {
+					node = treePolicy();
+					terminal = node.isTerminalNode();
+					winner = node.rollout();
+				}
 				node.backpropagate(winner);
+				
+				if (terminal)
+					node.prove(winner);
+				
+				if (timer.isCheckpoint())
+					stopIfDecided();
 			}
+		}
+		
+		/**
+		 * Lets timer stop the search once the child that would be played has a mean
+		 * reward above every other child's, within confidence bounds. Proven losses
+		 * are never played and are left out.
+		 */
+		private void stopIfDecided () {
+			if (root.isTerminalNode() || ! root.isFullyExpanded())
+				return; // Untried moves could be better
 			
-			long endTime = System.nanoTime();
-			long timeElapsed = endTime - startTime;
+			int numChildren = root.children.size();
+			double[] means = new double[numChildren];
+			int[] visits = new int[numChildren];
 			
-			Utils.print("Elapsed time (ms):");
-			Utils.print(timeElapsed / 1000000);
+			for (int i = 0; i < numChildren; i++) {
+				Node c = root.children.get(i);
+				
+				if (c.proof == PROVEN_LOSS)
+					means[i] = Double.NaN;
+				else
+					means[i] = c.isProven() ? c.provenValue() : c.qsa();
+				visits[i] = c.nsa();
+			}
+			timer.stopIfSeparated(means, visits, root.children.indexOf(root.finalChild()), TimedUCT.REWARD - TimedUCT.PENALTY);
+		}
+		
+		/**
+		 * Frees part of the node budget, see TreeBudget.evict
+		 */
+		private void evict () {
+			int freed = TreeBudget.evict(root, numNodes, nodeBudget);
 			
-			return root.bestChild(.0).a();
+			numNodes -= freed;
+			numEvicted += freed;
 		}
 		
 		public Node treePolicy () {
@@ -81,7 +294,29 @@ public class TimedUCT {
 					return curNode.expand();
 				
 				else
-					curNode = curNode.bestChild(1.4);
+					curNode = curNode.bestChild(cParam);
+			}
+			return curNode;
+		}
+		
+		/**
+		 * Tree policy for stateless nodes: rewinds scratch to the root, then applies
+		 * the move of every node on the way down
+		 */
+		public Node statelessTreePolicy () {
+			Node curNode = root;
+			
+			while (scratch.getUndoDepth() > 0)
+				scratch.undoMove();
+			
+			while (! scratch.gameOver()) {
+				if (! curNode.isFullyExpanded(scratch))
+					return curNode.expand(scratch);
+				
+				else {
+					curNode = curNode.bestChild(cParam);
+					scratch.applyMove(curNode.a().getMoveCode());
+				}
 			}
 			return curNode;
 		}
@@ -95,7 +330,7 @@ public class TimedUCT {
 	 * @author Le Nhat Hung
 	 *
 	 */
-	public class Node {
+	public class Node implements TreeBudget.Evictable<Node> {
 
 		Node parent;
 		List<Node> children;
@@ -103,12 +338,14 @@ public class TimedUCT {
 		PentagoBoardState state;
 		PentagoMove move;
 		
-		ArrayList<PentagoMove> untriedMoves;
+		long[] untried; // Bit per untried move code, null until the moves are first needed
 		
-		double moveValue; // Qsa
+		double moveValue; // Qsa, the running mean of the rewards
 		
 		int visitCount; // Nsa
 		
+		int proof = UNPROVEN;
+		
 		public Node (PentagoBoardState state) {
 			this.children = new ArrayList<Node>();
 			this.state = state;
@@ -123,7 +360,7 @@ public class TimedUCT {
 		}
 		
 		public Node expand () {
-			PentagoMove move = untriedMoves().remove(0);
+			PentagoMove move = nextUntried(state());
 			PentagoBoardState curStateClone = s();
 			Node child;
 			
@@ -135,12 +372,35 @@ public class TimedUCT {
 			);
 			child.setParent(this);
 			addChild(child);
+			numNodes++;
+			
+			return child;
+		}
+		
+		/**
+		 * Stateless version of expand(): the child stores only its move, and
+		 * curState is advanced to the child's state
+		 */
+		public Node expand (PentagoBoardState curState) {
+			PentagoMove move = nextUntried(curState);
+			Node child = new Node(null, move);
+			
+			curState.applyMove(move.getMoveCode());
+			child.setParent(this);
+			addChild(child);
+			numNodes++;
 			
 			return child;
 		}
 		
 		public int rollout () {
-			PentagoBoardState curRolloutState = s();
+			return rollout(s());
+		}
+		
+		/**
+		 * Plays curRolloutState out to the end of the game
+		 */
+		public int rollout (PentagoBoardState curRolloutState) {
 			PentagoMove move;
 			
 			while (! curRolloutState.gameOver()) {
@@ -152,7 +412,7 @@ public class TimedUCT {
 		}
 		
 		public PentagoMove rolloutPolicy (PentagoBoardState state) {
-			return (PentagoMove) state.getRandomMove();
+			return PentagoMove.fromCode(policy.chooseMoveCode(state, rng), state.getTurnPlayer());
 		}
 		
 		public void backpropagate (int winner) {
@@ -163,12 +423,129 @@ public class TimedUCT {
 				parent.backpropagate(winner);
 		}
 		
+		/**
+		 * Selection: proven children are skipped, their value is already known.
+		 * If every child is proven, the best proof for the player to move is taken.
+		 */
 		public Node bestChild(double cParam) {
 			double[] ucts = getUcts(this, cParam);
+			boolean anyUnproven = false;
+			
+			for (int i = 0; i < ucts.length; i++) {
+				if (children.get(i).isProven())
+					ucts[i] = Double.NEGATIVE_INFINITY;
+				else
+					anyUnproven = true;
+			}
+			
+			if (! anyUnproven)
+				return bestProvenChild();
 			
 			return children.get(Utils.argmax(ucts));
 		}
 		
+		/**
+		 * @return the child whose proof is best for the player to move at this node
+		 */
+		private Node bestProvenChild () {
+			boolean maxNode = isMaxNode();
+			Node best = children.get(0);
+			
+			for (Node child : children)
+				if (maxNode ? child.proof > best.proof : child.proof < best.proof)
+					best = child;
+			return best;
+		}
+		
+		/**
+		 * Move choice at the root: a proven win if there is one, otherwise the child
+		 * with the highest mean reward, in which proven children count at their exact
+		 * value. Proven losses are only played when every move is lost.
+		 */
+		public Node finalChild () {
+			double[] values = new double[children.size()];
+			
+			for (int i = 0; i < values.length; i++) {
+				Node child = children.get(i);
+				
+				if (child.proof == PROVEN_WIN)
+					return child;
+				
+				values[i] = child.isProven() ? child.provenValue() : child.qsa();
+			}
+			return children.get(Utils.argmax(values));
+		}
+		
+		/**
+		 * Marks this terminal node with the result of its game and updates its ancestors
+		 */
+		public void prove (int winner) {
+			if (winner == playerTurn)
+				setProof(PROVEN_WIN);
+			
+			else if (winner == Board.DRAW || winner == Board.NOBODY)
+				setProof(PROVEN_DRAW);
+			
+			else
+				setProof(PROVEN_LOSS);
+		}
+		
+		private void setProof (int proof) {
+			this.proof = proof;
+			
+			if ( hasParent() )
+				parent.updateProof();
+		}
+		
+		/**
+		 * Minimax over the children: the node is proven as soon as one child is proven
+		 * best for the player to move, or once every legal move has a proven child
+		 */
+		public void updateProof () {
+			boolean maxNode = isMaxNode();
+			int target = maxNode ? PROVEN_WIN : PROVEN_LOSS;
+			int value = maxNode ? PROVEN_LOSS : PROVEN_WIN;
+			boolean allProven = untried != null && ! hasUntried(untried);
+			
+			if (isProven())
+				return;
+			
+			for (Node child : children) {
+				if (child.proof == target) {
+					setProof(target);
+					return;
+				}
+				
+				if (! child.isProven())
+					allProven = false;
+				
+				else
+					value = maxNode ? Math.max(value, child.proof) : Math.min(value, child.proof);
+			}
+			
+			if (allProven)
+				setProof(value);
+		}
+		
+		/**
+		 * @return true if playerTurn is to move at this node
+		 */
+		public boolean isMaxNode () {
+			if (move == null)
+				return state().getTurnPlayer() == playerTurn;
+			
+			return move.getPlayerID() != playerTurn;
+		}
+		
+		public boolean isProven () { return proof != UNPROVEN; }
+		
+		/**
+		 * @return the exact mean reward of this proven node, on the scale of qsa()
+		 */
+		private double provenValue () {
+			return proof == PROVEN_WIN ? TimedUCT.REWARD : proof == PROVEN_LOSS ? TimedUCT.PENALTY : 0;
+		}
+		
 		public double[] getUcts(Node curNode, double cParam) {
 			int numChildren = curNode.children.size();
 			double[] ucts = new double[numChildren];
@@ -184,22 +561,57 @@ public class TimedUCT {
 		}
 		
 		public boolean isTerminalNode () {
-			return state.gameOver();
+			return state().gameOver();
 		}
 		
 		public boolean isFullyExpanded () {
-			return untriedMoves().isEmpty();
+			return isFullyExpanded(state());
 		}
 		
-		public ArrayList<PentagoMove> untriedMoves () {
-			if (untriedMoves == null)
-				untriedMoves = state.getAllLegalMoves();
+		public boolean isFullyExpanded (PentagoBoardState curState) {
+			return ! hasUntried(untried(curState));
+		}
+		
+		/**
+		 * @param curState this node's state, used the first time the moves are needed
+		 * @return the untried move mask, in which bit code of word code / 64 is set
+		 */
+		private long[] untried (PentagoBoardState curState) {
+			if (untried == null) {
+				int numMoves = curState.getLegalMoves(moveBuf);
+				
+				untried = new long[UNTRIED_WORDS];
+				for (int i = 0; i < numMoves; i++)
+					untried[moveBuf[i] >>> 6] |= 1L << moveBuf[i];
+			}
+			return untried;
+		}
+		
+		/**
+		 * Removes the untried move with the lowest code, the order of getAllLegalMoves
+		 */
+		private PentagoMove nextUntried (PentagoBoardState curState) {
+			long[] mask = untried(curState);
+			int w = 0;
+			
+			while (mask[w] == 0)
+				w++;
 			
-			return untriedMoves;
+			int code = w * 64 + Long.numberOfTrailingZeros(mask[w]);
+			mask[w] &= mask[w] - 1;
+			
+			return PentagoMove.fromCode(code, curState.getTurnPlayer());
+		}
+		
+		private boolean hasUntried (long[] mask) {
+			for (long word : mask)
+				if (word != 0)
+					return true;
+			return false;
 		}
 		
 		public void updateQsa (int winner) {
-			if (winner == TimedUCT.playerTurn)
+			if (winner == playerTurn)
 				moveValue += (TimedUCT.REWARD  - qsa()) / nsa();
 			
 			else
@@ -212,7 +624,17 @@ public class TimedUCT {
 		
 		public int nsa () { return visitCount; }
 		
-		public PentagoBoardState s () { return (PentagoBoardState) state.clone(); }
+		public PentagoBoardState s () { return (PentagoBoardState) state().clone(); }
+		
+		/**
+		 * Stateless nodes other than the root have no board, the tree policy keeps
+		 * it in MCTS.scratch instead
+		 */
+		private PentagoBoardState state () {
+			if (state == null)
+				throw new IllegalStateException("Stateless node has no board, use the scratch state of the search");
+			return state;
+		}
 		
 		public PentagoMove a () { return move; }
 		
@@ -221,5 +643,17 @@ public class TimedUCT {
 		public void addChild (Node child) { children.add(child); }
 		
 		public boolean hasParent () { return parent != null; }
+		
+		@Override
+		public List<Node> children () { return children; }
+		
+		/**
+		 * Forgets the children of this node, whose moves become untried again
+		 */
+		@Override
+		public void dropChildren () {
+			children = new ArrayList<Node>();
+			untried = null;
+		}
 	}
 }
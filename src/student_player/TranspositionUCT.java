@@ -0,0 +1,314 @@
+// File name: TranspositionUCT
+
+package student_player;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.lang.Math;
+
+import boardgame.Board;
+
+import pentago_swap.PentagoBoardState;
+import pentago_swap.PentagoMove;
+
+/**
+ * Transposition-aware UCT for Pentago Swap
+ *
+ * The search graph is a DAG: every position has one Node, found by its exact
+ * packed key, however many move orders or swaps reach it. Statistics of a
+ * position are therefore shared by all of its parents. Nodes hold no state;
+ * positions are rebuilt on a scratch state with applyMove/undoMove.
+ *
+ * The table is kept between moves. Positions that the new root does not reach
+ * through stored edges are dropped, so lines that were not played free their
+ * positions. Once the table holds its budget of positions, the search keeps
+ * descending through existing edges but adds no new position until the next
+ * move frees some. Values are kept from the point of view of the player who
+ * moved, so the colour in the config is not used.
+ *
+ * @author Le Nhat Hung
+ *
+ */
+public class TranspositionUCT {
+
+	public static final double
+		WIN = 1.,
+		LOSS = -1.,
+		DRAW = 0.;
+
+	private static final int MAX_DEPTH = PentagoBoardState.BOARD_SIZE * PentagoBoardState.BOARD_SIZE + 1;
+
+	// Approximate heap cost of one position with its table entry, move and edge arrays, measured on full tables
+	public static final int BYTES_PER_POSITION = 1100;
+
+	private final int numSims; // Maximum number of simulations per move, 0 for no maximum
+	private final double cParam;
+	private final int positionBudget;
+	private final RolloutPolicy policy;
+
+	private HashMap<Long, Node> table = new HashMap<>();
+	private SplittableRandom rng = new SplittableRandom();
+	private int[] moveBuf = new int[PentagoMove.NUM_CODES];
+	private TimeManager timer = new TimeManager();
+	private int markEpoch; // Value of Node.mark for positions reached from the current root
+
+	// Path of the current iteration: node and edge index taken at each depth
+	private Node[] pathNodes = new Node[MAX_DEPTH];
+	private int[] pathEdges = new int[MAX_DEPTH];
+
+	public TranspositionUCT (EngineConfig config) {
+		this.numSims = config.getNumSims();
+		this.cParam = config.getCParam();
+		this.positionBudget = config.getNodeBudget(BYTES_PER_POSITION);
+		this.policy = config.getRolloutPolicy();
+	}
+
+	public TranspositionUCT () {
+		this(new EngineConfig(0, 0));
+	}
+
+	public PentagoMove chooseMove (PentagoBoardState state, long simTime) {
+		PentagoBoardState scratch = (PentagoBoardState) state.clone();
+		Node root = getNode(state.toPackedKey(), scratch);
+		int simCount = 0;
+		int numDropped;
+
+		timer.start(simTime);
+
+		numDropped = dropUnreachable(root);
+
+		do {
+			int depth = treePolicy(root, scratch);
+			int winner = rollout((PentagoBoardState) scratch.clone());
+
+			backpropagate(depth, winner);
+
+			while (scratch.getUndoDepth() > 0)
+				scratch.undoMove();
+			simCount++;
+
+			if (timer.isCheckpoint())
+				root.stopIfDecided(timer);
+		} while ((numSims <= 0 || simCount < numSims) && timer.hasTime());
+
+		Utils.print("Elapsed time (ms):");
+		Utils.print(timer.getElapsedMillis());
+		Utils.print("Simulations: " + simCount + ", positions: " + table.size() + "/" + positionBudget + ", dropped: " + numDropped);
+
+		if (root.children.isEmpty())
+			return (PentagoMove) state.getRandomMove(); // Table was full before the root got an edge
+
+		return PentagoMove.fromCode(root.moves[root.mostVisitedEdge()], state.getTurnPlayer());
+	}
+
+	/**
+	 * Descends from root on scratch, recording the path, and adds one edge
+	 * @return the number of edges on the path
+	 */
+	private int treePolicy (Node root, PentagoBoardState scratch) {
+		Node curNode = root;
+		int depth = 0;
+
+		while (! scratch.gameOver()) {
+			int edge;
+
+			if (curNode.hasUntried() && table.size() < positionBudget) {
+				int move = curNode.popUntried(rng);
+				scratch.applyMove(move);
+				edge = curNode.addEdge(move, getNode(scratch.toPackedKey(), scratch));
+				scratch.undoMove();
+			} else if (curNode.children.isEmpty()) {
+				break; // Table is full: evaluate this position as it is
+			} else {
+				edge = curNode.bestEdge(cParam);
+			}
+
+			pathNodes[depth] = curNode;
+			pathEdges[depth] = edge;
+			depth++;
+			scratch.applyMove(curNode.moves[edge]);
+
+			Node next = curNode.children.get(edge);
+			if (next.visitCount == 0)
+				break; // New position: evaluate it with a rollout
+			curNode = next;
+		}
+		return depth;
+	}
+
+	private int rollout (PentagoBoardState curRolloutState) {
+		while (! curRolloutState.gameOver())
+			curRolloutState.applyMove(policy.chooseMoveCode(curRolloutState, rng));
+
+		return curRolloutState.getWinner();
+	}
+
+	private void backpropagate (int depth, int winner) {
+		for (int i = 0; i < depth; i++) {
+			Node parent = pathNodes[i];
+			Node child = parent.children.get(pathEdges[i]);
+
+			parent.edgeVisits[pathEdges[i]]++;
+			child.visitCount++;
+			child.valueSum += value(winner, parent.turnPlayer);
+		}
+		if (depth > 0)
+			pathNodes[0].visitCount++; // Root
+	}
+
+	private static double value (int winner, int player) {
+		if (winner == player)
+			return WIN;
+
+		else if (winner == Board.DRAW || winner == Board.NOBODY)
+			return DRAW;
+
+		return LOSS;
+	}
+
+	private Node getNode (long key, PentagoBoardState s) {
+		Node node = table.get(key);
+
+		if (node == null) {
+			node = new Node(s);
+			table.put(key, node);
+		}
+		return node;
+	}
+
+	/**
+	 * Drops every position that root does not reach through stored edges
+	 * @return the number of positions dropped
+	 */
+	private int dropUnreachable (Node root) {
+		Iterator<Node> it = table.values().iterator();
+		int dropped = 0;
+
+		markEpoch++;
+		root.markReachable();
+
+		while (it.hasNext())
+			if (it.next().mark != markEpoch) {
+				it.remove();
+				dropped++;
+			}
+		return dropped;
+	}
+
+	public int getTableSize () { return table.size(); }
+
+	/**
+	 * Position in the search DAG
+	 *
+	 * @author Le Nhat Hung
+	 *
+	 */
+	public class Node {
+
+		int turnPlayer;
+		int mark; // markEpoch of the last dropUnreachable that reached this position
+
+		int[] untriedMoves;
+		int numUntried;
+
+		// Edges, in the order they were added
+		int[] moves = new int[4];
+		int[] edgeVisits = new int[4];
+		List<Node> children = new ArrayList<Node>(4);
+
+		double valueSum; // From the point of view of the player who moved into this position
+		int visitCount; // Over all edges into this position
+
+		public Node (PentagoBoardState state) {
+			this.turnPlayer = state.getTurnPlayer();
+			this.numUntried = state.gameOver() ? 0 : state.getLegalMoves(moveBuf);
+			this.untriedMoves = Arrays.copyOf(moveBuf, numUntried);
+		}
+
+		public boolean hasUntried () { return numUntried > 0; }
+
+		/**
+		 * Marks this position and every position below it, once each. Paths are at
+		 * most one game long, so the recursion stays shallow.
+		 */
+		void markReachable () {
+			if (mark == markEpoch)
+				return;
+
+			mark = markEpoch;
+			for (Node child : children)
+				child.markReachable();
+		}
+
+		public int popUntried (SplittableRandom rng) {
+			int i = rng.nextInt(numUntried);
+			int move = untriedMoves[i];
+
+			untriedMoves[i] = untriedMoves[--numUntried];
+			return move;
+		}
+
+		public int addEdge (int move, Node child) {
+			int edge = children.size();
+
+			if (edge == moves.length) {
+				moves = Arrays.copyOf(moves, edge * 2);
+				edgeVisits = Arrays.copyOf(edgeVisits, edge * 2);
+			}
+			moves[edge] = move;
+			children.add(child);
+			return edge;
+		}
+
+		/**
+		 * UCB over edges: exploitation uses the child's merged statistics, and
+		 * exploration the visits made through this edge
+		 */
+		public int bestEdge (double cParam) {
+			int numEdges = children.size();
+			double logN = Math.log(Math.max(1, visitCount));
+			double[] ucts = new double[numEdges];
+
+			for (int i = 0; i < numEdges; i++) {
+				Node child = children.get(i);
+				double q = child.visitCount == 0 ? 0 : child.valueSum / child.visitCount;
+
+				ucts[i] = q + cParam * Math.sqrt( logN / (edgeVisits[i] + 1) );
+			}
+			return Utils.argmax(ucts);
+		}
+
+		/**
+		 * Lets timer stop the search once the most visited edge is out of reach
+		 */
+		public void stopIfDecided (TimeManager timer) {
+			int best = 0, second = 0;
+
+			for (int i = 0; i < children.size(); i++) {
+				if (edgeVisits[i] > best) {
+					second = best;
+					best = edgeVisits[i];
+				} else if (edgeVisits[i] > second) {
+					second = edgeVisits[i];
+				}
+			}
+			timer.stopIfDecided(best, second);
+		}
+
+		/**
+		 * @return the index of the most visited edge, 0 if there is none
+		 */
+		public int mostVisitedEdge () {
+			int best = 0;
+
+			for (int i = 1; i < children.size(); i++)
+				if (edgeVisits[i] > edgeVisits[best])
+					best = i;
+			return best;
+		}
+	}
+}
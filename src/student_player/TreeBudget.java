@@ -0,0 +1,104 @@
+// File name: TreeBudget
+
+package student_player;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Memory policy shared by the search engines
+ *
+ * A tree may take HEAP_FRACTION of the maximum heap, which EngineConfig turns
+ * into a node budget from each engine's measured cost per node. Engines with
+ * object trees evict once the budget is reached: the least visited subtrees
+ * collapse back into leaves, which keep their own statistics, until
+ * EVICT_FRACTION of the budget is free.
+ *
+ * @author Le Nhat Hung
+ *
+ */
+public final class TreeBudget {
+
+	// Share of the maximum heap the tree may use
+	public static final double HEAP_FRACTION = .5;
+
+	// Share of the node budget freed by one eviction
+	public static final double EVICT_FRACTION = .25;
+
+	/**
+	 * Tree node that can be collapsed by evict
+	 */
+	public interface Evictable<N extends Evictable<N>> {
+
+		List<N> children ();
+
+		int nsa ();
+
+		/**
+		 * Forgets the children and untried moves, which are generated again on the
+		 * next visit. Statistics of the node itself are kept.
+		 */
+		void dropChildren ();
+
+		/**
+		 * @return the number of nodes in the subtree rooted at this node
+		 */
+		default int subtreeSize () {
+			int size = 1;
+
+			for (N c : children())
+				size += c.subtreeSize();
+			return size;
+		}
+
+		/**
+		 * Drops the children of this node
+		 * @return the number of nodes dropped
+		 */
+		default int collapse () {
+			int dropped = subtreeSize() - 1;
+
+			dropChildren();
+			return dropped;
+		}
+	}
+
+	private TreeBudget () {}
+
+	/**
+	 * Collapses the least visited internal nodes below root until EVICT_FRACTION
+	 * of nodeBudget is free. Descendants never have more visits than their
+	 * ancestors, so they go first.
+	 * @param numNodes nodes in the tree rooted at root
+	 * @return the number of nodes freed
+	 */
+	public static <N extends Evictable<N>> int evict (N root, int numNodes, int nodeBudget) {
+		List<N> internalNodes = new ArrayList<N>();
+		int target = numNodes - (int) (nodeBudget * (1 - EVICT_FRACTION));
+		int freed = 0;
+
+		for (N child : root.children())
+			collectInternal(child, internalNodes);
+		internalNodes.sort(Comparator.comparingInt(N::nsa));
+
+		for (N n : internalNodes) {
+			if (freed >= target)
+				break;
+			freed += n.collapse();
+		}
+		return freed;
+	}
+
+	/**
+	 * Adds every node of the subtree rooted at node that has children to nodes
+	 */
+	private static <N extends Evictable<N>> void collectInternal (N node, List<N> nodes) {
+		if (node.children().isEmpty())
+			return;
+
+		nodes.add(node);
+		for (N c : node.children())
+			collectInternal(c, nodes);
+	}
+}
@@ -0,0 +1,277 @@
+// File name: TreeParallelUCT
+
+package student_player;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.lang.Math;
+
+import boardgame.Board;
+
+import pentago_swap.PentagoBoardState;
+import pentago_swap.PentagoMove;
+
+/**
+ * Tree-parallel UCT for Pentago Swap
+ *
+ * All workers descend one shared tree. Node statistics are plain ints updated
+ * with atomic field updaters, so no locks are taken. On the way down each worker
+ * adds a virtual loss to every node it passes, which steers the other workers
+ * onto different lines until the real result is backed up. Children are claimed
+ * with a CAS on the node's expansion counter, and each worker replays its path on
+ * its own scratch state. Once the tree holds its node budget, workers stop
+ * claiming children and roll out from the leaves they reach. The number of
+ * workers is the thread count of the config, and values are kept from the point
+ * of view of the player who moved, so its colour is not used.
+ *
+ * @author Le Nhat Hung
+ *
+ */
+public class TreeParallelUCT {
+
+	public static final int
+		WIN = 1,
+		LOSS = -1,
+		DRAW = 0;
+
+	// Added to a node's value (as a loss) while a worker is below it
+	private static final int VIRTUAL_LOSS = 1;
+
+	// Approximate heap cost of one node with its move and child arrays
+	public static final int BYTES_PER_NODE = 1800;
+
+	// Shared by all TreeParallelUCT instances. Threads are made on demand and end
+	// after a minute idle, so engines need no shutdown.
+	private static final ExecutorService WORKERS = Executors.newCachedThreadPool(r -> {
+		Thread t = new Thread(r, "TreeParallelUCT worker");
+		t.setDaemon(true);
+		return t;
+	});
+
+	private static final AtomicIntegerFieldUpdater<Node> VISITS =
+			AtomicIntegerFieldUpdater.newUpdater(Node.class, "visitCount");
+	private static final AtomicIntegerFieldUpdater<Node> VALUE =
+			AtomicIntegerFieldUpdater.newUpdater(Node.class, "valueSum");
+	private static final AtomicIntegerFieldUpdater<Node> EXPANDED =
+			AtomicIntegerFieldUpdater.newUpdater(Node.class, "numExpanded");
+
+	private final int numSims; // Maximum number of simulations per move and worker, 0 for no maximum
+	private final double cParam;
+	private final int numThreads;
+	private final int nodeBudget;
+	private final RolloutPolicy policy;
+
+	private AtomicInteger numNodes = new AtomicInteger();
+	private TimeManager timer = new TimeManager();
+
+	public TreeParallelUCT (EngineConfig config) {
+		this.numSims = config.getNumSims();
+		this.cParam = config.getCParam();
+		this.numThreads = config.getNumThreads();
+		this.nodeBudget = config.getNodeBudget(BYTES_PER_NODE);
+		this.policy = config.getRolloutPolicy();
+	}
+
+	public TreeParallelUCT (int numThreads) {
+		this(new EngineConfig(0, 0).withThreads(numThreads));
+	}
+
+	public PentagoMove chooseMove (PentagoBoardState state, long simTime) {
+		Node root = new Node(null, -1, state, new int[PentagoMove.NUM_CODES], new SplittableRandom());
+		List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+		int simCount = 0;
+
+		timer.start(simTime);
+		numNodes.set(1);
+
+		for (int i = 0; i < numThreads; i++) {
+			PentagoBoardState scratch = (PentagoBoardState) state.clone();
+			TimeManager workerTimer = new TimeManager();
+
+			workerTimer.start(timer);
+			results.add(WORKERS.submit(() -> search(root, scratch, workerTimer)));
+		}
+
+		for (Future<Integer> f : results) {
+			try {
+				simCount += f.get();
+			} catch (InterruptedException | ExecutionException e) {
+				Utils.print("Tree-parallel worker failed: " + e);
+			}
+		}
+
+		Utils.print("Elapsed time (ms):");
+		Utils.print(timer.getElapsedMillis());
+		Utils.print("Simulations: " + simCount + ", nodes: " + numNodes.get() + "/" + nodeBudget);
+
+		Node best = root.mostVisitedChild();
+		if (best == null)
+			return (PentagoMove) state.getRandomMove();
+
+		return PentagoMove.fromCode(best.move, state.getTurnPlayer());
+	}
+
+	/**
+	 * Worker loop on the shared tree
+	 * @return the number of simulations run
+	 */
+	private int search (Node root, PentagoBoardState scratch, TimeManager workerTimer) {
+		SplittableRandom rng = new SplittableRandom();
+		int[] moveBuf = new int[PentagoMove.NUM_CODES];
+		int simCount = 0;
+
+		while ((numSims <= 0 || simCount < numSims) && workerTimer.hasTime()) {
+			Node node = treePolicy(root, scratch, moveBuf, rng);
+			int leafMover = 1 - scratch.getTurnPlayer();
+
+			while (! scratch.gameOver())
+				scratch.applyMove(policy.chooseMoveCode(scratch, rng));
+
+			backpropagate(node, value(scratch.getWinner(), leafMover));
+
+			while (scratch.getUndoDepth() > 0)
+				scratch.undoMove();
+			simCount++;
+		}
+		return simCount;
+	}
+
+	private Node treePolicy (Node root, PentagoBoardState scratch, int[] moveBuf, SplittableRandom rng) {
+		Node curNode = root;
+		addVirtualLoss(curNode);
+
+		while (! curNode.terminal) {
+			int idx = (numNodes.get() < nodeBudget) ? curNode.claimUnexpanded() : -1;
+
+			if (idx >= 0) {
+				scratch.applyMove(curNode.moves[idx]);
+				Node child = new Node(curNode, curNode.moves[idx], scratch, moveBuf, rng);
+				numNodes.incrementAndGet();
+				curNode.children.set(idx, child);
+				addVirtualLoss(child);
+				return child;
+			}
+
+			Node next = curNode.bestChild(cParam);
+			if (next == null)
+				return curNode; // Tree is full, or children claimed by other workers are not published yet
+
+			scratch.applyMove(next.move);
+			curNode = next;
+			addVirtualLoss(curNode);
+		}
+		return curNode;
+	}
+
+	private static void addVirtualLoss (Node node) {
+		VISITS.incrementAndGet(node);
+		VALUE.addAndGet(node, -VIRTUAL_LOSS);
+	}
+
+	/**
+	 * Replaces the virtual loss on every node from node to the root with the
+	 * result, which flips sign at every level. Visits were already counted.
+	 */
+	private static void backpropagate (Node node, int value) {
+		for (Node n = node; n != null; n = n.parent) {
+			VALUE.addAndGet(n, value + VIRTUAL_LOSS);
+			value = -value;
+		}
+	}
+
+	private static int value (int winner, int player) {
+		if (winner == player)
+			return WIN;
+
+		else if (winner == Board.DRAW || winner == Board.NOBODY)
+			return DRAW;
+
+		return LOSS;
+	}
+
+	/**
+	 * Node shared by all workers
+	 *
+	 * @author Le Nhat Hung
+	 *
+	 */
+	static class Node {
+
+		final Node parent;
+		final int move; // Code of the move that led here
+		final boolean terminal;
+		final int[] moves; // Legal moves, in random order
+		final AtomicReferenceArray<Node> children;
+
+		volatile int numExpanded;
+		volatile int visitCount; // Including virtual visits of workers below
+		volatile int valueSum; // From the point of view of the player who played move
+
+		Node (Node parent, int move, PentagoBoardState state, int[] buf, SplittableRandom rng) {
+			int numMoves = state.gameOver() ? 0 : state.getLegalMoves(buf);
+
+			this.parent = parent;
+			this.move = move;
+			this.terminal = state.gameOver();
+			this.moves = new int[numMoves];
+			for (int i = 0; i < numMoves; i++) { // Shuffle while copying
+				int j = rng.nextInt(i + 1);
+				moves[i] = moves[j];
+				moves[j] = buf[i];
+			}
+			this.children = new AtomicReferenceArray<Node>(numMoves);
+		}
+
+		/**
+		 * @return the index of a move no worker has expanded yet, or -1
+		 */
+		int claimUnexpanded () {
+			int e;
+			do {
+				e = numExpanded;
+				if (e >= moves.length)
+					return -1;
+			} while (! EXPANDED.compareAndSet(this, e, e + 1));
+			return e;
+		}
+
+		Node bestChild (double cParam) {
+			double logN = Math.log(Math.max(1, visitCount));
+			double best = Double.NEGATIVE_INFINITY;
+			Node bestChild = null;
+
+			for (int i = 0; i < children.length(); i++) {
+				Node c = children.get(i);
+				if (c == null)
+					continue;
+
+				int n = Math.max(1, c.visitCount);
+				double uct = (double) c.valueSum / n + cParam * Math.sqrt(logN / n);
+				if (uct > best) {
+					best = uct;
+					bestChild = c;
+				}
+			}
+			return bestChild;
+		}
+
+		Node mostVisitedChild () {
+			Node best = null;
+
+			for (int i = 0; i < children.length(); i++) {
+				Node c = children.get(i);
+				if (c != null && (best == null || c.visitCount > best.visitCount))
+					best = c;
+			}
+			return best;
+		}
+	}
+}
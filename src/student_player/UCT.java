@@ -3,9 +3,16 @@
 package student_player;
 
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.lang.Math;
 
+import pentago_swap.PentagoBatchRollout;
+import boardgame.Board;
+
 import pentago_swap.PentagoBoardState;
 import pentago_swap.PentagoMove;
 
@@ -21,15 +28,63 @@ public class UCT {
 		REWARD = 100,
 		PENALTY = -100;
 	
-	private static int playerTurn;
+	private static final int NUM_CELLS = PentagoBoardState.BOARD_SIZE * PentagoBoardState.BOARD_SIZE;
+	
+	// Approximate heap cost of one node with its state, sorted move list and AMAF arrays, measured on full trees
+	public static final int BYTES_PER_NODE = 2700;
+	
+	// Shared by all UCT instances for leaf-parallel rollouts
+	private static final ForkJoinPool ROLLOUT_POOL = ForkJoinPool.commonPool();
+	
+	private final int playerTurn;
+	private final int numSims; // Maximum number of simulations per move, 0 for no maximum
+	private final double cParam;
+	private final int raveEquivalence; // Visits at which a child's own value and its AMAF value weigh the same
+	private final double wideningK; // A node with n visits may have ceil(k (n + 1)^alpha) children
+	private final double wideningAlpha;
+	private final int numRollouts;
+	private final boolean parallelRollouts;
+	private final int nodeBudget;
+	private final RolloutPolicy policy;
 	
 	private MCTS mcts;
-	private int numSims;
+	private int numNodes;
+	private int numEvicted; // During the current move
+	private TimeManager timer = new TimeManager();
+	private SplittableRandom rng = new SplittableRandom();
+	private PentagoBatchRollout batchRollout; // null: one object-based rollout per leaf
+	private long[] playedCells = new long[2]; // Cells placed by each player in the current simulation
 	
-	public UCT (int playerTurn, int numSims) {
+	/**
+	 * Several playouts per leaf are run in lock-step by PentagoBatchRollout, or
+	 * concurrently on a shared ForkJoinPool if the config asks for parallel rollouts
+	 */
+	public UCT (EngineConfig config) {
+		this.playerTurn = config.getPlayerTurn();
+		this.numSims = config.getNumSims();
+		this.cParam = config.getCParam();
+		this.raveEquivalence = config.getRaveEquivalence();
+		this.wideningK = config.getWideningK();
+		this.wideningAlpha = config.getWideningAlpha();
+		this.numRollouts = config.getNumRollouts();
+		this.parallelRollouts = config.isParallelRollouts();
+		this.nodeBudget = config.getNodeBudget(BYTES_PER_NODE);
+		this.policy = config.getRolloutPolicy();
 		
-		this.playerTurn = playerTurn;
-		this.numSims = numSims;
+		if (numRollouts > 1 && ! parallelRollouts)
+			this.batchRollout = new PentagoBatchRollout(numRollouts, rng);
+	}
+	
+	public UCT (int playerTurn, int numSims) {
+		this(new EngineConfig(playerTurn, numSims));
+	}
+	
+	public UCT (int playerTurn, int numSims, int numRollouts) {
+		this(new EngineConfig(playerTurn, numSims).withRollouts(numRollouts, false));
+	}
+	
+	public UCT (int playerTurn, int numSims, int numRollouts, boolean parallelRollouts) {
+		this(new EngineConfig(playerTurn, numSims).withRollouts(numRollouts, parallelRollouts));
 	}
 	
 	public PentagoMove chooseMove (PentagoBoardState state, long simTime) {
@@ -49,30 +104,80 @@ public class UCT {
 		
 		private Node root;
 		
-		public MCTS (Node root) { this.root = root; }
+		public MCTS (Node root) {
+			this.root = root;
+			numNodes = 1;
+			numEvicted = 0;
+		}
 		
 		public PentagoMove chooseMove (PentagoBoardState state, int numSims, long simTime) {
 			Node node;
 			int winner;
-			long startTime = System.nanoTime();
-			long timeLimit = System.currentTimeMillis() + simTime;
-
-			for (int i = 0; i < numSims; i++) {
-			//while (System.currentTimeMillis() < timeLimit) {
+			
+			timer.start(simTime);
+			
+			for (int i = 0; (numSims <= 0 || i < numSims) && timer.hasTime(); i++) {
+				if (numNodes >= nodeBudget)
+					evict();
+				
 				node = treePolicy();
-				winner = node.rollout();
+				
+				if (timer.isCheckpoint())
+					stopIfDecided();
+				
+				if (parallelRollouts) {
+					node.backpropagate(node.rolloutParallel());
+					continue;
+				}
+				if (batchRollout != null) {
+					node.backpropagate(node.rolloutBatch());
+					continue;
+				}
+				playedCells[0] = playedCells[1] = 0L;
+				winner = node.rollout(rng, playedCells);
 				node.backpropagate(winner);
+				
+				if (raveEquivalence > 0)
+					node.backpropagateAmaf(winner, playedCells);
 			}
 			
-			long endTime = System.nanoTime();
-			long timeElapsed = endTime - startTime;
-			
 			Utils.print("Elapsed time (ms):");
-			Utils.print(timeElapsed / 1000000);
+			Utils.print(timer.getElapsedMillis());
+			Utils.print("Nodes: " + numNodes + "/" + nodeBudget + ", evicted: " + numEvicted);
 			
 			return root.bestChild(.0).a();
 		}
 		
+		/**
+		 * Lets timer stop the search once the child that would be played has a mean
+		 * reward above every other child's, within confidence bounds. Visits are spread
+		 * too evenly by the exploration term for a visit gap to open.
+		 */
+		private void stopIfDecided () {
+			if (root.isTerminalNode() || root.numTried < root.untriedMoves().size())
+				return; // Moves still locked by progressive widening could be better
+			
+			int numChildren = root.children.size();
+			double[] means = new double[numChildren];
+			int[] visits = new int[numChildren];
+			
+			for (int i = 0; i < numChildren; i++) {
+				means[i] = root.children.get(i).qsa();
+				visits[i] = root.children.get(i).nsa();
+			}
+			timer.stopIfSeparated(means, visits, root.children.indexOf(root.bestChild(.0)), UCT.REWARD - UCT.PENALTY);
+		}
+		
+		/**
+		 * Frees part of the node budget, see TreeBudget.evict
+		 */
+		private void evict () {
+			int freed = TreeBudget.evict(root, numNodes, nodeBudget);
+			
+			numNodes -= freed;
+			numEvicted += freed;
+		}
+		
 		public Node treePolicy () {
 			Node curNode = root;
 			
@@ -81,7 +186,7 @@ public class UCT {
 					return curNode.expand();
 				
 				else
-					curNode = curNode.bestChild(1.4);
+					curNode = curNode.bestChild(cParam);
 			}
 			return curNode;
 		}
@@ -95,7 +200,7 @@ public class UCT {
 	 * @author Le Nhat Hung
 	 *
 	 */
-	public class Node {
+	public class Node implements TreeBudget.Evictable<Node> {
 
 		Node parent;
 		List<Node> children;
@@ -103,12 +208,17 @@ public class UCT {
 		PentagoBoardState state;
 		PentagoMove move;
 		
-		ArrayList<PentagoMove> untriedMoves;
+		ArrayList<PentagoMove> untriedMoves; // All legal moves, best first
+		int numTried; // Moves of untriedMoves already expanded
 		
-		double moveValue; // Qsa
+		double moveValue; // Qsa, the running mean of the rewards
 		
 		int visitCount; // Nsa
 		
+		// All-moves-as-first statistics of this node's player, by cell placed
+		int[] amafVisits;
+		double[] amafValue;
+		
 		public Node (PentagoBoardState state) {
 			this.children = new ArrayList<Node>();
 			this.state = state;
@@ -123,7 +233,7 @@ public class UCT {
 		}
 		
 		public Node expand () {
-			PentagoMove move = untriedMoves().remove(0);
+			PentagoMove move = untriedMoves().get(numTried++);
 			PentagoBoardState curStateClone = s();
 			Node child;
 			
@@ -135,24 +245,70 @@ public class UCT {
 			);
 			child.setParent(this);
 			addChild(child);
+			numNodes++;
 			
 			return child;
 		}
 		
 		public int rollout () {
+			return rollout(rng, null);
+		}
+		
+		/**
+		 * @param playedCells if not null, receives the cells placed by each player
+		 */
+		private int rollout (SplittableRandom rng, long[] playedCells) {
 			PentagoBoardState curRolloutState = s();
 			PentagoMove move;
 			
 			while (! curRolloutState.gameOver()) {
-				move = rolloutPolicy(curRolloutState);
+				move = rolloutPolicy(curRolloutState, rng);
+				if (playedCells != null)
+					playedCells[move.getPlayerID()] |= 1L << cellOf(move);
 				curRolloutState.processMove(move);
 			}
 			
 			return curRolloutState.getWinner();
 		}
 		
+		/**
+		 * @return outcome counts of numRollouts playouts, indexed as in PentagoBatchRollout
+		 */
+		public int[] rolloutBatch () {
+			return batchRollout.run(state, numRollouts);
+		}
+		
+		/**
+		 * Runs numRollouts playouts concurrently on ROLLOUT_POOL, each with its own
+		 * clone of the state and its own random stream
+		 * @return outcome counts, indexed as in PentagoBatchRollout
+		 */
+		public int[] rolloutParallel () {
+			List<ForkJoinTask<Integer>> tasks = new ArrayList<ForkJoinTask<Integer>>(numRollouts);
+			int[] outcomes = new int[3];
+			
+			for (int i = 0; i < numRollouts; i++) {
+				SplittableRandom taskRng = rng.split();
+				tasks.add(ROLLOUT_POOL.submit(() -> rollout(taskRng, null)));
+			}
+			
+			for (ForkJoinTask<Integer> task : tasks) {
+				int winner = task.join();
+				
+				if (winner == Board.DRAW || winner == Board.NOBODY)
+					outcomes[PentagoBatchRollout.DRAWS]++;
+				else
+					outcomes[winner]++; // WHITE_WINS and BLACK_WINS are the player ids
+			}
+			return outcomes;
+		}
+		
 		public PentagoMove rolloutPolicy (PentagoBoardState state) {
-			return (PentagoMove) state.getRandomMove();
+			return rolloutPolicy(state, rng);
+		}
+		
+		private PentagoMove rolloutPolicy (PentagoBoardState state, SplittableRandom rng) {
+			return PentagoMove.fromCode(policy.chooseMoveCode(state, rng), state.getTurnPlayer());
 		}
 		
 		public void backpropagate (int winner) {
@@ -163,6 +319,50 @@ public class UCT {
 				parent.backpropagate(winner);
 		}
 		
+		/**
+		 * Backs up a batch of outcomes as one update of Nsa and the running mean Qsa
+		 */
+		public void backpropagate (int[] outcomes) {
+			int total = outcomes[PentagoBatchRollout.WHITE_WINS] + outcomes[PentagoBatchRollout.BLACK_WINS] + outcomes[PentagoBatchRollout.DRAWS];
+			int wins = outcomes[playerTurn];
+			double rewardSum = wins * UCT.REWARD + (total - wins) * UCT.PENALTY;
+			
+			visitCount += total;
+			moveValue += (rewardSum - total * qsa()) / nsa();
+			
+			if ( hasParent() )
+				parent.backpropagate(outcomes);
+		}
+		
+		/**
+		 * Updates the AMAF statistics of every ancestor: each cell placed later in the
+		 * simulation by the ancestor's player counts as if it had been placed first
+		 * @param playedCells cells placed in the rollout, extended with the tree moves
+		 */
+		public void backpropagateAmaf (int winner, long[] playedCells) {
+			double reward = (winner == playerTurn) ? UCT.REWARD : UCT.PENALTY;
+			
+			for (Node n = this; n.hasParent(); n = n.parent) {
+				int player = n.move.getPlayerID();
+				
+				playedCells[player] |= 1L << cellOf(n.move);
+				n.parent.updateAmaf(playedCells[player], reward);
+			}
+		}
+		
+		private void updateAmaf (long cells, double reward) {
+			if (amafVisits == null) {
+				amafVisits = new int[NUM_CELLS];
+				amafValue = new double[NUM_CELLS];
+			}
+			for (; cells != 0; cells &= cells - 1) {
+				int cell = Long.numberOfTrailingZeros(cells);
+				
+				amafVisits[cell]++;
+				amafValue[cell] += (reward - amafValue[cell]) / amafVisits[cell];
+			}
+		}
+		
 		public Node bestChild(double cParam) {
 			double[] ucts = getUcts(this, cParam);
 			
@@ -177,29 +377,65 @@ public class UCT {
 			for (int i = 0; i < numChildren; i++) {
 				child = curNode.children.get(i);
 				
-				ucts[i] = child.qsa() / child.nsa()
+				ucts[i] = curNode.raveQsa(child) / child.nsa()
 						+ cParam * Math.sqrt( curNode.nsa() / (child.nsa() + 1) );
 			}
 			return ucts;
 		}
 		
+		/**
+		 * @return Qsa of child blended with the AMAF value of its cell, weighted by
+		 * 		beta = sqrt(k / (3 n + k)) which fades as the child gets visits
+		 */
+		public double raveQsa (Node child) {
+			if (amafVisits == null || raveEquivalence == 0)
+				return child.qsa();
+			
+			int cell = cellOf(child.a());
+			if (amafVisits[cell] == 0)
+				return child.qsa();
+			
+			double beta = Math.sqrt( raveEquivalence / (3. * child.nsa() + raveEquivalence) );
+			return (1 - beta) * child.qsa() + beta * amafValue[cell];
+		}
+		
 		public boolean isTerminalNode () {
 			return state.gameOver();
 		}
 		
+		/**
+		 * @return true if every move unlocked by progressive widening has a child
+		 */
 		public boolean isFullyExpanded () {
-			return untriedMoves().isEmpty();
+			int numUnlocked = (int) Math.ceil( wideningK * Math.pow(nsa() + 1, wideningAlpha) );
+			
+			return numTried >= Math.min(untriedMoves().size(), numUnlocked);
 		}
 		
+		/**
+		 * @return the legal moves, ordered the first time by the open line score of the
+		 * 		player to move minus the opponent's after each move
+		 */
 		public ArrayList<PentagoMove> untriedMoves () {
-			if (untriedMoves == null)
+			if (untriedMoves == null) {
+				PentagoBoardState scratch = s();
+				int player = state.getTurnPlayer();
+				int[] scores = new int[PentagoMove.NUM_CODES];
+				
 				untriedMoves = state.getAllLegalMoves();
-			
+				
+				for (PentagoMove m : untriedMoves) {
+					scratch.applyMove(m.getMoveCode());
+					scores[m.getMoveCode()] = scratch.getOpenLineScore(player) - scratch.getOpenLineScore(1 - player);
+					scratch.undoMove();
+				}
+				untriedMoves.sort(Comparator.comparingInt(m -> -scores[m.getMoveCode()]));
+			}
 			return untriedMoves;
 		}
 		
 		public void updateQsa (int winner) {
-			if (winner == UCT.playerTurn)
+			if (winner == playerTurn)
 				moveValue += (UCT.REWARD  - qsa()) / nsa();
 			
 			else
@@ -221,5 +457,23 @@ public class UCT {
 		public void addChild (Node child) { children.add(child); }
 		
 		public boolean hasParent () { return parent != null; }
+		
+		@Override
+		public List<Node> children () { return children; }
+		
+		/**
+		 * Forgets the children of this node. Its moves are generated and ordered again,
+		 * and widening starts over from the first of them.
+		 */
+		@Override
+		public void dropChildren () {
+			children = new ArrayList<Node>();
+			untriedMoves = null;
+			numTried = 0;
+		}
+	}
+	
+	private static int cellOf (PentagoMove move) {
+		return move.getMoveCode() / PentagoMove.NUM_SWAPS;
 	}
 }
@@ -0,0 +1,62 @@
+package pentago_swap;
+
+import java.util.SplittableRandom;
+
+/**
+ * Checks the lock-step batch simulator against one-at-a-time random playouts on
+ * PentagoBoardState: outcome counts add up, a finished start is counted as its
+ * result, and the outcome frequencies of both agree within sampling error.
+ * @author Le Nhat Hung
+ */
+public class BatchRolloutCheck {
+    private static final int NUM_PLAYOUTS = 40000;
+
+    public static void main(String[] args) {
+        SplittableRandom rng = new SplittableRandom(9);
+        PentagoBatchRollout batch = new PentagoBatchRollout(333, rng); // Does not divide NUM_PLAYOUTS
+
+        for (int plies = 0; plies <= 20; plies += 10) {
+            PentagoBoardState start = new PentagoBoardState();
+            while (start.getUndoDepth() < plies && !start.gameOver()) {
+                start.applyMove(start.getRandomMoveCode(rng));
+            }
+            if (start.gameOver()) { continue; }
+
+            int[] batched = batch.run(start, NUM_PLAYOUTS);
+            int[] single = new int[3];
+            for (int i = 0; i < NUM_PLAYOUTS; i++) {
+                PentagoBoardState s = (PentagoBoardState) start.clone();
+                while (!s.gameOver()) {
+                    s.applyMove(s.getRandomMoveCode(rng));
+                }
+                single[outcomeIndex(s.getWinner())]++;
+            }
+
+            check(batched[0] + batched[1] + batched[2] == NUM_PLAYOUTS, "counts add up");
+            for (int k = 0; k < 3; k++) {
+                double p = (batched[k] + single[k]) / (2. * NUM_PLAYOUTS);
+                double sigma = Math.sqrt(2 * p * (1 - p) / NUM_PLAYOUTS);
+                double gap = Math.abs(batched[k] - single[k]) / (double) NUM_PLAYOUTS;
+                check(gap <= 5 * sigma + 1e-9, "outcome " + k + " after " + plies + " plies");
+            }
+        }
+
+        PentagoBoardState over = new PentagoBoardState();
+        while (!over.gameOver()) {
+            over.applyMove(over.getRandomMoveCode(rng));
+        }
+        int[] counts = batch.run(over, 10);
+        check(counts[outcomeIndex(over.getWinner())] == 10, "finished start");
+        System.out.println("BatchRolloutCheck: ok");
+    }
+
+    private static int outcomeIndex(int winner) {
+        if (winner == PentagoBoardState.WHITE) { return PentagoBatchRollout.WHITE_WINS; }
+        if (winner == PentagoBoardState.BLACK) { return PentagoBatchRollout.BLACK_WINS; }
+        return PentagoBatchRollout.DRAWS; // Board.DRAW, or Board.NOBODY when the turn limit ends the game
+    }
+
+    private static void check(boolean ok, String what) {
+        if (!ok) { throw new AssertionError("BatchRolloutCheck failed: " + what); }
+    }
+}
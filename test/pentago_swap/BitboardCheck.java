@@ -0,0 +1,128 @@
+package pentago_swap;
+
+import boardgame.Board;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Plays random games on PentagoBoardState and on a plain 6x6 array, which places,
+ * swaps quadrants and looks for five in a row cell by cell, and checks that the
+ * two agree on every piece and on the winner after every move.
+ * @author Le Nhat Hung
+ */
+public class BitboardCheck {
+    private static final int SIZE = PentagoBoardState.BOARD_SIZE;
+    private static final int EMPTY = -1;
+
+    public static void main(String[] args) {
+        SplittableRandom rng = new SplittableRandom(1);
+        for (int game = 0; game < 2000; game++) {
+            PentagoBoardState state = new PentagoBoardState();
+            int[][] grid = newGrid();
+            int plies = 0;
+            while (!state.gameOver()) {
+                PentagoMove m = state.getRandomMove(rng);
+                int mover = state.getTurnPlayer();
+                state.processMove(m);
+                place(grid, m, mover);
+                plies++;
+                checkSameBoard(state, grid);
+                check(state.getWinner() == expectedWinner(grid, mover, plies), "winner after " + m.toPrettyString());
+            }
+        }
+        checkSwapOnly();
+        System.out.println("BitboardCheck: ok");
+    }
+
+    /**
+     * A swap can complete a line without the placed piece being part of it
+     */
+    private static void checkSwapOnly() {
+        int[] white = { 0, 1, 2, 21, 22 }; // (0,0) (0,1) (0,2) in TL, (3,3) (3,4) in BR
+        int[] black = { 18, 19, 24, 25, 30 };
+        PentagoBoardState state = stateOf(white, black);
+        check(state.getWinner() == Board.NOBODY, "no winner before the swap");
+        state.applyMove(12 * PentagoMove.NUM_SWAPS + 4); // Place at (2,0), swap TR and BR
+        check(state.getWinner() == PentagoBoardState.WHITE, "swap completes the top row");
+    }
+
+    private static PentagoBoardState stateOf(int[] white, int[] black) {
+        long key = 0L;
+        for (int cell : white) { key += pow3(cell); }
+        for (int cell : black) { key += 2 * pow3(cell); }
+        return PentagoBoardState.fromPackedKey(key);
+    }
+
+    private static long pow3(int n) {
+        long p = 1L;
+        for (int i = 0; i < n; i++) { p *= 3; }
+        return p;
+    }
+
+    private static int[][] newGrid() {
+        int[][] grid = new int[SIZE][SIZE];
+        for (int[] row : grid) {
+            Arrays.fill(row, EMPTY);
+        }
+        return grid;
+    }
+
+    private static void place(int[][] grid, PentagoMove m, int player) {
+        PentagoCoord c = m.getMoveCoord();
+        grid[c.getX()][c.getY()] = player;
+        int a = m.getASwap().ordinal();
+        int b = m.getBSwap().ordinal();
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < 3; j++) {
+                int ax = a / 2 * 3 + i, ay = a % 2 * 3 + j;
+                int bx = b / 2 * 3 + i, by = b % 2 * 3 + j;
+                int tmp = grid[ax][ay];
+                grid[ax][ay] = grid[bx][by];
+                grid[bx][by] = tmp;
+            }
+        }
+    }
+
+    private static void checkSameBoard(PentagoBoardState state, int[][] grid) {
+        for (int x = 0; x < SIZE; x++) {
+            for (int y = 0; y < SIZE; y++) {
+                PentagoBoardState.Piece p = state.getPieceAt(x, y);
+                int expected = grid[x][y];
+                boolean same = expected == EMPTY ? p == PentagoBoardState.Piece.EMPTY
+                        : p == (expected == PentagoBoardState.WHITE ? PentagoBoardState.Piece.WHITE : PentagoBoardState.Piece.BLACK);
+                check(same, "piece at (" + x + ", " + y + ")");
+            }
+        }
+    }
+
+    private static int expectedWinner(int[][] grid, int mover, int plies) {
+        boolean moverWins = hasFive(grid, mover);
+        boolean otherWins = hasFive(grid, 1 - mover);
+        if (moverWins) { return otherWins ? Board.DRAW : mover; }
+        if (otherWins) { return 1 - mover; }
+        return plies == SIZE * SIZE ? Board.DRAW : Board.NOBODY;
+    }
+
+    private static boolean hasFive(int[][] grid, int player) {
+        int[][] directions = { {0, 1}, {1, 0}, {1, 1}, {1, -1} };
+        for (int x = 0; x < SIZE; x++) {
+            for (int y = 0; y < SIZE; y++) {
+                for (int[] d : directions) {
+                    int k = 0;
+                    while (k < 5) {
+                        int cx = x + k * d[0], cy = y + k * d[1];
+                        if (cx < 0 || cx >= SIZE || cy < 0 || cy >= SIZE || grid[cx][cy] != player) { break; }
+                        k++;
+                    }
+                    if (k == 5) { return true; }
+                }
+            }
+        }
+        return false;
+    }
+
+    private static void check(boolean ok, String what) {
+        if (!ok) { throw new AssertionError("BitboardCheck failed: " + what); }
+    }
+}
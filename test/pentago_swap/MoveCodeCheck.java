@@ -0,0 +1,63 @@
+package pentago_swap;
+
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+
+/**
+ * Checks the int move encoding: codes round-trip through PentagoMove, legal-move
+ * generation lists the same codes with and without objects, and the interned
+ * moves it hands out are shared and cannot be changed.
+ * @author Le Nhat Hung
+ */
+public class MoveCodeCheck {
+
+    public static void main(String[] args) {
+        for (int player = 0; player < 2; player++) {
+            for (int code = 0; code < PentagoMove.NUM_CODES; code++) {
+                PentagoMove m = PentagoMove.fromCode(code, player);
+                check(m.getMoveCode() == code && m.getPlayerID() == player, "code " + code);
+                check(m == PentagoMove.fromCode(code, player), "interned");
+                PentagoMove copy = new PentagoMove(m.getMoveCoord(), m.getASwap(), m.getBSwap(), player);
+                check(copy.getMoveCode() == code, "copy of code " + code);
+            }
+        }
+
+        SplittableRandom rng = new SplittableRandom(4);
+        int[] codes = new int[PentagoMove.NUM_CODES];
+        for (int game = 0; game < 500; game++) {
+            PentagoBoardState state = new PentagoBoardState();
+            while (!state.gameOver()) {
+                ArrayList<PentagoMove> moves = state.getAllLegalMoves();
+                int numMoves = state.getLegalMoves(codes);
+                check(moves.size() == numMoves, "same number of moves");
+                for (int i = 0; i < numMoves; i++) {
+                    check(moves.get(i) == PentagoMove.fromCode(codes[i], state.getTurnPlayer()), "same order, interned");
+                    check(state.isLegal(moves.get(i)), "legal");
+                }
+                PentagoMove random = (PentagoMove) state.getRandomMove();
+                check(random == PentagoMove.fromCode(random.getMoveCode(), state.getTurnPlayer()), "random move interned");
+                state.applyMove(codes[rng.nextInt(numMoves)]);
+            }
+        }
+
+        PentagoMove shared = PentagoMove.fromCode(0, PentagoBoardState.WHITE);
+        shared.setPlayerID(PentagoBoardState.WHITE); // Same values, as the client and server set them
+        shared.setFromBoard(false);
+        check(throwsUnsupported(() -> shared.setPlayerID(PentagoBoardState.BLACK)), "interned player is fixed");
+        check(throwsUnsupported(() -> shared.setFromBoard(true)), "interned origin is fixed");
+        System.out.println("MoveCodeCheck: ok");
+    }
+
+    private static boolean throwsUnsupported(Runnable r) {
+        try {
+            r.run();
+        } catch (UnsupportedOperationException e) {
+            return true;
+        }
+        return false;
+    }
+
+    private static void check(boolean ok, String what) {
+        if (!ok) { throw new AssertionError("MoveCodeCheck failed: " + what); }
+    }
+}
@@ -0,0 +1,50 @@
+package pentago_swap;
+
+import java.util.SplittableRandom;
+
+/**
+ * Checks that toPackedKey and fromPackedKey are inverses on reachable positions,
+ * that every move changes the key, and that keys which cannot come from a game
+ * are rejected.
+ * @author Le Nhat Hung
+ */
+public class PackedKeyCheck {
+
+    public static void main(String[] args) {
+        SplittableRandom rng = new SplittableRandom(8);
+        for (int game = 0; game < 2000; game++) {
+            PentagoBoardState state = new PentagoBoardState();
+            check(state.toPackedKey() == 0L, "empty board packs to 0");
+            while (!state.gameOver()) {
+                long previous = state.toPackedKey();
+                state.applyMove(state.getRandomMoveCode(rng));
+                long key = state.toPackedKey();
+                check(key != previous, "a move changes the key");
+
+                PentagoBoardState unpacked = PentagoBoardState.fromPackedKey(key);
+                check(unpacked.toPackedKey() == key, "key round trip");
+                check(unpacked.equals(state), "state round trip");
+                check(unpacked.getHash() == state.getHash(), "hash round trip");
+            }
+        }
+
+        check(rejects(-1L), "negative key");
+        check(rejects(150094635296999121L), "3^36");
+        check(rejects(2L), "black piece before white");
+        check(rejects(1L + 3L), "two white pieces, no black");
+        System.out.println("PackedKeyCheck: ok");
+    }
+
+    private static boolean rejects(long key) {
+        try {
+            PentagoBoardState.fromPackedKey(key);
+        } catch (IllegalArgumentException e) {
+            return true;
+        }
+        return false;
+    }
+
+    private static void check(boolean ok, String what) {
+        if (!ok) { throw new AssertionError("PackedKeyCheck failed: " + what); }
+    }
+}
@@ -0,0 +1,45 @@
+package pentago_swap;
+
+import java.util.SplittableRandom;
+
+/**
+ * Checks that getRandomMoveCode only draws legal moves and draws every legal
+ * move about equally often.
+ * @author Le Nhat Hung
+ */
+public class RandomMoveCheck {
+    private static final int DRAWS_PER_MOVE = 2000;
+
+    public static void main(String[] args) {
+        SplittableRandom rng = new SplittableRandom(6);
+        int[] codes = new int[PentagoMove.NUM_CODES];
+        for (int plies = 0; plies < 30; plies += 5) {
+            PentagoBoardState state = new PentagoBoardState();
+            while (state.getUndoDepth() < plies && !state.gameOver()) {
+                state.applyMove(state.getRandomMoveCode(rng));
+            }
+            if (state.gameOver()) { continue; }
+
+            int numMoves = state.getLegalMoves(codes);
+            boolean[] legal = new boolean[PentagoMove.NUM_CODES];
+            for (int i = 0; i < numMoves; i++) { legal[codes[i]] = true; }
+
+            int[] counts = new int[PentagoMove.NUM_CODES];
+            for (int i = 0; i < numMoves * DRAWS_PER_MOVE; i++) {
+                int code = state.getRandomMoveCode(rng);
+                check(legal[code], "drew illegal code " + code);
+                counts[code]++;
+            }
+            // Six standard deviations of a binomial count around its mean
+            double bound = 6 * Math.sqrt(DRAWS_PER_MOVE);
+            for (int i = 0; i < numMoves; i++) {
+                check(Math.abs(counts[codes[i]] - DRAWS_PER_MOVE) < bound, "uniform draw of code " + codes[i]);
+            }
+        }
+        System.out.println("RandomMoveCheck: ok");
+    }
+
+    private static void check(boolean ok, String what) {
+        if (!ok) { throw new AssertionError("RandomMoveCheck failed: " + what); }
+    }
+}
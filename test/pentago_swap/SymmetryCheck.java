@@ -0,0 +1,66 @@
+package pentago_swap;
+
+import java.util.SplittableRandom;
+
+/**
+ * Checks the board symmetries: each transform and its inverse cancel out,
+ * canonical keys agree over all eight images of a position, and playing the
+ * image of a move on the image of a position gives the image of the result.
+ * @author Le Nhat Hung
+ */
+public class SymmetryCheck {
+    private static final int NUM_CELLS = PentagoBoardState.BOARD_SIZE * PentagoBoardState.BOARD_SIZE;
+
+    public static void main(String[] args) {
+        for (int t = 0; t < PentagoSymmetry.NUM_TRANSFORMS; t++) {
+            int u = PentagoSymmetry.inverse(t);
+            for (int cell = 0; cell < NUM_CELLS; cell++) {
+                check(PentagoSymmetry.transformCell(u, PentagoSymmetry.transformCell(t, cell)) == cell, "inverse of cell");
+            }
+            for (int code = 0; code < PentagoMove.NUM_CODES; code++) {
+                check(PentagoSymmetry.transformMove(u, PentagoSymmetry.transformMove(t, code)) == code, "inverse of move");
+            }
+        }
+
+        SplittableRandom rng = new SplittableRandom(7);
+        for (int game = 0; game < 300; game++) {
+            PentagoBoardState state = new PentagoBoardState();
+            while (!state.gameOver()) {
+                long key = PentagoSymmetry.canonicalKey(state);
+                int code = state.getRandomMoveCode(rng);
+                PentagoBoardState next = (PentagoBoardState) state.clone();
+                next.applyMove(code);
+                for (int t = 0; t < PentagoSymmetry.NUM_TRANSFORMS; t++) {
+                    PentagoBoardState image = transform(state, t);
+                    check(PentagoSymmetry.canonicalKey(image) == key, "canonical key of image " + t);
+                    check(image.getHash() == PentagoSymmetry.key(state, t), "key of image " + t);
+
+                    image.applyMove(PentagoSymmetry.transformMove(t, code));
+                    check(image.equals(transform(next, t)), "move commutes with transform " + t);
+                    check(image.getWinner() == next.getWinner(), "same winner under transform " + t);
+                }
+                state = next;
+            }
+        }
+
+        // The canonical transform maps a position to its canonical key
+        PentagoBoardState s = new PentagoBoardState();
+        s.applyMove(35 * PentagoMove.NUM_SWAPS);
+        check(PentagoSymmetry.key(s, PentagoSymmetry.canonicalTransform(s)) == PentagoSymmetry.canonicalKey(s), "canonical transform");
+        System.out.println("SymmetryCheck: ok");
+    }
+
+    private static PentagoBoardState transform(PentagoBoardState s, int t) {
+        long key = 0L;
+        long white = PentagoSymmetry.transformBits(t, s.getBits(PentagoBoardState.WHITE));
+        long black = PentagoSymmetry.transformBits(t, s.getBits(PentagoBoardState.BLACK));
+        for (int cell = NUM_CELLS - 1; cell >= 0; cell--) {
+            key = key * 3 + ((white >>> cell) & 1) + 2 * ((black >>> cell) & 1);
+        }
+        return PentagoBoardState.fromPackedKey(key);
+    }
+
+    private static void check(boolean ok, String what) {
+        if (!ok) { throw new AssertionError("SymmetryCheck failed: " + what); }
+    }
+}
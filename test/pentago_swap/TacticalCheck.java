@@ -0,0 +1,63 @@
+package pentago_swap;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Checks the mask-based tactical queries against brute force: every legal move
+ * is played, and the winning moves are those after which the mover has won, the
+ * safe moves those after which the opponent has not.
+ * @author Le Nhat Hung
+ */
+public class TacticalCheck {
+
+    public static void main(String[] args) {
+        SplittableRandom rng = new SplittableRandom(10);
+        int[] codes = new int[PentagoMove.NUM_CODES];
+        int[] found = new int[PentagoMove.NUM_CODES];
+        int positionsWithWin = 0;
+        for (int game = 0; game < 1000; game++) {
+            PentagoBoardState state = new PentagoBoardState();
+            while (!state.gameOver()) {
+                int mover = state.getTurnPlayer();
+                int numMoves = state.getLegalMoves(codes);
+                boolean[] wins = new boolean[PentagoMove.NUM_CODES];
+                boolean[] safe = new boolean[PentagoMove.NUM_CODES];
+                for (int i = 0; i < numMoves; i++) {
+                    state.applyMove(codes[i]);
+                    wins[codes[i]] = state.getWinner() == mover;
+                    safe[codes[i]] = state.getWinner() != 1 - mover;
+                    state.undoMove();
+                }
+
+                int numWins = state.getWinningMoves(found);
+                check(sameSet(found, numWins, wins), "winning moves");
+                check(state.hasWinningMove() == (numWins > 0), "hasWinningMove");
+                int numSafe = state.getSafeMoves(found);
+                check(sameSet(found, numSafe, safe), "safe moves");
+                if (numWins > 0) { positionsWithWin++; }
+
+                state.applyMove(codes[rng.nextInt(numMoves)]);
+            }
+            check(!state.hasWinningMove() && state.getWinningMoves(found) == 0 && state.getSafeMoves(found) == 0, "finished game");
+        }
+        check(positionsWithWin > 100, "enough positions with a winning move");
+        System.out.println("TacticalCheck: ok");
+    }
+
+    /**
+     * @return true if the first n codes are distinct and are exactly the codes set in expected
+     */
+    private static boolean sameSet(int[] codes, int n, boolean[] expected) {
+        boolean[] seen = new boolean[PentagoMove.NUM_CODES];
+        for (int i = 0; i < n; i++) {
+            if (seen[codes[i]] || !expected[codes[i]]) { return false; }
+            seen[codes[i]] = true;
+        }
+        return Arrays.equals(seen, expected);
+    }
+
+    private static void check(boolean ok, String what) {
+        if (!ok) { throw new AssertionError("TacticalCheck failed: " + what); }
+    }
+}
@@ -0,0 +1,52 @@
+package pentago_swap;
+
+import java.util.SplittableRandom;
+
+/**
+ * Checks that applyMove followed by undoMove restores the exact state, including
+ * the winner, turn and hash, for every legal move of positions along random
+ * games, and for whole games taken back one move at a time.
+ * @author Le Nhat Hung
+ */
+public class UndoCheck {
+
+    public static void main(String[] args) {
+        SplittableRandom rng = new SplittableRandom(5);
+        int[] codes = new int[PentagoMove.NUM_CODES];
+        for (int game = 0; game < 300; game++) {
+            PentagoBoardState state = new PentagoBoardState();
+            PentagoBoardState[] history = new PentagoBoardState[PentagoBoardState.BOARD_SIZE * PentagoBoardState.BOARD_SIZE + 1];
+            int plies = 0;
+            while (!state.gameOver()) {
+                PentagoBoardState before = (PentagoBoardState) state.clone();
+                int numMoves = state.getLegalMoves(codes);
+                for (int i = 0; i < numMoves; i++) {
+                    PentagoBoardState expected = (PentagoBoardState) before.clone();
+                    expected.processMove(PentagoMove.fromCode(codes[i], before.getTurnPlayer()));
+                    state.applyMove(codes[i]);
+                    checkSame(state, expected, "applyMove matches processMove");
+                    state.undoMove();
+                    checkSame(state, before, "undoMove restores the state");
+                }
+                history[plies++] = before;
+                state.applyMove(codes[rng.nextInt(numMoves)]);
+            }
+            while (plies > 0) {
+                state.undoMove();
+                checkSame(state, history[--plies], "taking back the game");
+            }
+            check(state.getUndoDepth() == 0, "nothing left to undo");
+        }
+        System.out.println("UndoCheck: ok");
+    }
+
+    private static void checkSame(PentagoBoardState s, PentagoBoardState expected, String what) {
+        check(s.equals(expected) && s.getHash() == expected.getHash() && s.toPackedKey() == expected.toPackedKey(), what);
+        check(s.getWinner() == expected.getWinner() && s.getTurnPlayer() == expected.getTurnPlayer()
+                && s.getTurnNumber() == expected.getTurnNumber(), what);
+    }
+
+    private static void check(boolean ok, String what) {
+        if (!ok) { throw new AssertionError("UndoCheck failed: " + what); }
+    }
+}
@@ -0,0 +1,58 @@
+package pentago_swap;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+/**
+ * Checks the precomputed win-line masks: 32 distinct lines of five cells, and
+ * hasFiveInARow agreeing with a cell-by-cell scan on random masks.
+ * @author Le Nhat Hung
+ */
+public class WinLineCheck {
+    private static final int SIZE = PentagoBoardState.BOARD_SIZE;
+
+    public static void main(String[] args) {
+        long[] lines = PentagoBoardState.getWinLines();
+        Set<Long> distinct = new HashSet<>();
+        for (long line : lines) {
+            check(Long.bitCount(line) == 5, "five cells per line");
+            check(PentagoBoardState.hasFiveInARow(line), "a line alone is a win");
+            for (long cells = line; cells != 0; cells &= cells - 1) {
+                check(!scanFive(line & ~Long.lowestOneBit(cells)), "four cells of a line are no win");
+            }
+            distinct.add(line);
+        }
+        // 2 per row and column, 4 long diagonals and 4 short ones
+        check(lines.length == 32 && distinct.size() == 32, "32 distinct lines");
+
+        SplittableRandom rng = new SplittableRandom(2);
+        for (int i = 0; i < 200000; i++) {
+            long bits = rng.nextLong() & rng.nextLong() & ((1L << (SIZE * SIZE)) - 1); // About a quarter of the cells
+            check(PentagoBoardState.hasFiveInARow(bits) == scanFive(bits), "mask " + Long.toHexString(bits));
+        }
+        System.out.println("WinLineCheck: ok");
+    }
+
+    private static boolean scanFive(long bits) {
+        int[][] directions = { {0, 1}, {1, 0}, {1, 1}, {1, -1} };
+        for (int x = 0; x < SIZE; x++) {
+            for (int y = 0; y < SIZE; y++) {
+                for (int[] d : directions) {
+                    int k = 0;
+                    while (k < 5) {
+                        int cx = x + k * d[0], cy = y + k * d[1];
+                        if (cx < 0 || cx >= SIZE || cy < 0 || cy >= SIZE || (bits & (1L << (cx * SIZE + cy))) == 0) { break; }
+                        k++;
+                    }
+                    if (k == 5) { return true; }
+                }
+            }
+        }
+        return false;
+    }
+
+    private static void check(boolean ok, String what) {
+        if (!ok) { throw new AssertionError("WinLineCheck failed: " + what); }
+    }
+}
@@ -0,0 +1,65 @@
+package pentago_swap;
+
+import java.util.SplittableRandom;
+
+/**
+ * Checks that the incrementally maintained Zobrist hash always equals the hash
+ * recomputed from the colour masks, through processMove, applyMove and undoMove,
+ * and that positions reached by different move orders share their hash.
+ * @author Le Nhat Hung
+ */
+public class ZobristCheck {
+
+    public static void main(String[] args) {
+        SplittableRandom rng = new SplittableRandom(3);
+        for (int game = 0; game < 2000; game++) {
+            PentagoBoardState state = new PentagoBoardState();
+            PentagoBoardState replay = new PentagoBoardState();
+            while (!state.gameOver()) {
+                int code = state.getRandomMoveCode(rng);
+                state.processMove(PentagoMove.fromCode(code, state.getTurnPlayer()));
+                replay.applyMove(code);
+                checkHash(state);
+                checkHash(replay);
+                check(state.getHash() == replay.getHash(), "processMove and applyMove agree");
+            }
+            while (replay.getUndoDepth() > 0) {
+                replay.undoMove();
+                checkHash(replay);
+            }
+            check(replay.getHash() == 0L, "empty board hashes to 0");
+        }
+        checkTransposition();
+        System.out.println("ZobristCheck: ok");
+    }
+
+    /**
+     * White at (0,0) and (5,5), black at (0,5) then (5,0), every move with the BL-BR
+     * swap: both orders of the white moves end in the same position
+     */
+    private static void checkTransposition() {
+        PentagoBoardState a = new PentagoBoardState();
+        PentagoBoardState b = new PentagoBoardState();
+        int[] first = { cell(0, 0), cell(0, 5), cell(5, 5), cell(5, 0) };
+        int[] second = { cell(5, 5), cell(0, 5), cell(0, 0), cell(5, 0) };
+        for (int i = 0; i < first.length; i++) {
+            a.applyMove(first[i] * PentagoMove.NUM_SWAPS + 5); // BL-BR
+            b.applyMove(second[i] * PentagoMove.NUM_SWAPS + 5);
+        }
+        check(a.getBits(PentagoBoardState.WHITE) == b.getBits(PentagoBoardState.WHITE)
+                && a.getBits(PentagoBoardState.BLACK) == b.getBits(PentagoBoardState.BLACK), "same position");
+        check(a.getHash() == b.getHash() && a.equals(b), "same hash for a transposition");
+    }
+
+    private static int cell(int x, int y) { return x * PentagoBoardState.BOARD_SIZE + y; }
+
+    private static void checkHash(PentagoBoardState s) {
+        long expected = PentagoBoardState.hashOf(s.getBits(PentagoBoardState.WHITE), s.getBits(PentagoBoardState.BLACK));
+        check(s.getHash() == expected, "incremental hash");
+        check(((PentagoBoardState) s.clone()).getHash() == expected, "clone keeps the hash");
+    }
+
+    private static void check(boolean ok, String what) {
+        if (!ok) { throw new AssertionError("ZobristCheck failed: " + what); }
+    }
+}
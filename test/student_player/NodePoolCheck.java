@@ -0,0 +1,192 @@
+// File name: NodePoolCheck
+
+package student_player;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import pentago_swap.PentagoMove;
+
+/**
+ * Checks NodePool.keepSubtree on random trees: the kept subtree keeps its shape,
+ * statistics, move codes and untried moves, its parent links point at the new
+ * indices, the new root has no parent, and the pool shrinks to the slots of the
+ * subtree.
+ *
+ * @author Le Nhat Hung
+ *
+ */
+public class NodePoolCheck {
+
+	private static final int CAPACITY = 20000;
+
+	// What the check knows about a node before the pool is compacted
+	private static class Snapshot {
+		int moveCode, visits, childCount;
+		double valueSum;
+		boolean hasUntried;
+		boolean[] reserved; // Codes of the child block, null if the node was never expanded
+		List<Snapshot> children = new ArrayList<>();
+	}
+
+	public static void main (String[] args) {
+		SplittableRandom rng = new SplittableRandom(11);
+		NodePool pool = new NodePool(CAPACITY);
+
+		for (int round = 0; round < 200; round++) {
+			boolean[][] reserved = new boolean[CAPACITY][];
+			int root = pool.reset();
+
+			grow(pool, root, reserved, rng, 2000);
+			check(pool.keepSubtree(root) == root && pool.parent(root) == NodePool.NONE, "keeping the root");
+
+			// Keep a random node one or two levels down, expanded or not
+			int node = randomChild(pool, root, rng);
+			if (node != NodePool.NONE && rng.nextBoolean()) {
+				int grandchild = randomChild(pool, node, rng);
+				if (grandchild != NodePool.NONE)
+					node = grandchild;
+			}
+			if (node == NodePool.NONE)
+				continue;
+
+			Snapshot kept = snapshot(pool, node, reserved);
+			int expectedSize = numSlots(kept);
+
+			int newRoot = pool.keepSubtree(node);
+			check(newRoot == 0, "new root index");
+			check(pool.parent(newRoot) == NodePool.NONE, "new root has no parent");
+			check(pool.size() == expectedSize, "size is the kept slots");
+			compare(pool, newRoot, kept);
+
+			// The compacted pool can still grow
+			grow(pool, newRoot, new boolean[CAPACITY][], rng, 500);
+		}
+		System.out.println("NodePoolCheck: ok");
+	}
+
+	/**
+	 * Runs iterations of a random descent: reserve a block for a leaf with spare
+	 * capacity, otherwise expand an untried move or step to a random child
+	 */
+	private static void grow (NodePool pool, int root, boolean[][] reserved, SplittableRandom rng, int iterations) {
+		int[] moves = new int[PentagoMove.NUM_CODES];
+
+		for (int i = 0; i < iterations; i++) {
+			int node = root;
+			while (true) {
+				if (!pool.isReserved(node)) {
+					int numMoves = randomMoves(moves, rng);
+					if (pool.canReserve(numMoves)) {
+						pool.reserveChildren(node, moves, numMoves);
+						reserved[node] = new boolean[PentagoMove.NUM_CODES];
+						for (int k = 0; k < numMoves; k++)
+							reserved[node][moves[k]] = true;
+					}
+					break;
+				}
+				if (pool.hasUntried(node) && (pool.childCount(node) == 0 || rng.nextBoolean())) {
+					node = pool.expandRandom(node, rng);
+					break;
+				}
+				if (pool.childCount(node) == 0)
+					break;
+				node = pool.firstChild(node) + rng.nextInt(pool.childCount(node));
+			}
+			pool.backpropagate(node, rng.nextInt(3) - 1);
+		}
+	}
+
+	/**
+	 * Fills moves with between 1 and 12 distinct random codes
+	 * @return the number of codes
+	 */
+	private static int randomMoves (int[] moves, SplittableRandom rng) {
+		boolean[] taken = new boolean[PentagoMove.NUM_CODES];
+		int numMoves = 1 + rng.nextInt(12);
+
+		for (int k = 0; k < numMoves; k++) {
+			int code;
+			do {
+				code = rng.nextInt(PentagoMove.NUM_CODES);
+			} while (taken[code]);
+			taken[code] = true;
+			moves[k] = code;
+		}
+		return numMoves;
+	}
+
+	private static int randomChild (NodePool pool, int node, SplittableRandom rng) {
+		if (pool.childCount(node) == 0)
+			return NodePool.NONE;
+		return pool.firstChild(node) + rng.nextInt(pool.childCount(node));
+	}
+
+	private static Snapshot snapshot (NodePool pool, int node, boolean[][] reserved) {
+		Snapshot s = new Snapshot();
+		s.moveCode = pool.moveCode(node);
+		s.visits = pool.visits(node);
+		s.valueSum = pool.valueSum(node);
+		s.childCount = pool.childCount(node);
+		s.hasUntried = pool.hasUntried(node);
+		s.reserved = reserved[node];
+
+		for (int c = 0; c < s.childCount; c++)
+			s.children.add(snapshot(pool, pool.firstChild(node) + c, reserved));
+		return s;
+	}
+
+	/**
+	 * @return the number of pool slots used by the subtree, counting whole child blocks
+	 */
+	private static int numSlots (Snapshot s) {
+		int slots = 1;
+
+		if (s.reserved != null)
+			for (boolean r : s.reserved)
+				if (r)
+					slots++;
+		for (Snapshot child : s.children)
+			slots += numSlots(child) - 1;
+		return slots;
+	}
+
+	/**
+	 * Checks node against its snapshot, then expands every untried move left and
+	 * checks that the block ends up holding exactly the reserved codes
+	 */
+	private static void compare (NodePool pool, int node, Snapshot s) {
+		check(pool.moveCode(node) == s.moveCode, "move code");
+		check(pool.visits(node) == s.visits, "visits");
+		check(pool.valueSum(node) == s.valueSum, "value sum");
+		check(pool.childCount(node) == s.childCount, "child count");
+		check(pool.hasUntried(node) == s.hasUntried, "untried moves");
+		check(pool.isReserved(node) == (s.reserved != null), "reserved block");
+
+		for (int c = 0; c < s.childCount; c++) {
+			int child = pool.firstChild(node) + c;
+			check(pool.parent(child) == node, "parent link");
+			compare(pool, child, s.children.get(c));
+		}
+
+		if (s.reserved == null)
+			return;
+		SplittableRandom rng = new SplittableRandom(node);
+		while (pool.hasUntried(node))
+			pool.expandRandom(node, rng);
+		boolean[] codes = new boolean[PentagoMove.NUM_CODES];
+		for (int c = 0; c < pool.childCount(node); c++) {
+			int code = pool.moveCode(pool.firstChild(node) + c);
+			check(!codes[code], "code expanded twice");
+			codes[code] = true;
+		}
+		check(Arrays.equals(codes, s.reserved), "block holds the reserved codes");
+	}
+
+	private static void check (boolean ok, String what) {
+		if (!ok)
+			throw new AssertionError("NodePoolCheck failed: " + what);
+	}
+}